@@ -0,0 +1,33 @@
+import hw.HWDocument;
+import html.HtmlDocument;
+import html.HtmlWriter;
+import jmh.Benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * The converter measured by {@link Benchmarks}, with the default options, looked up by
+ * name as the benchmarks cannot refer to the unnamed package.
+ */
+public final class BenchmarkConversion implements Benchmarks.Conversion {
+	private final Converter converter;
+
+	/**
+	 * @param stream    whether the document is converted a section at a time
+	 */
+	public BenchmarkConversion(boolean stream) {
+		converter = new Converter(null, null, null, false, false, stream, 0,
+				HtmlWriter.Format.DEFAULT, null, null, Converter.Compression.NONE);
+	}
+
+	@Override
+	public HtmlDocument toHtml(HWDocument hwDoc, Path output) {
+		return converter.toHtml(hwDoc, output);
+	}
+
+	@Override
+	public void convert(Path input, Path output) throws IOException {
+		converter.convert(input, output);
+	}
+}
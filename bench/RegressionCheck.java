@@ -0,0 +1,264 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Compares the time and the bytes allocated by stages of a conversion, as measured by
+ * {@link jmh.Benchmarks}, against a stored baseline, and fails when any of them is worse
+ * by more than a threshold.
+ *
+ * <p>
+ * Usage, with the results of JMH written as JSON,
+ * <pre>
+ * mvn -Pbench package
+ * java -jar target/benchmarks.jar -prof gc -rf json -rff results.json -p size=1m parse convert
+ * java -cp target/benchmarks.jar RegressionCheck --results=results.json [--update]
+ *     [--baseline=bench/baseline.properties] [--time-threshold=0.25] [--alloc-threshold=0.05]
+ * </pre>
+ * or with <code>bench/regression-check [options]</code>, which builds and runs the
+ * benchmarks, then the check with the options, such as in CI. With --update the
+ * measurements are stored as the new baseline instead of being compared. The exit status
+ * is 1 if a regression is found. Time depends on the machine, a baseline should only be
+ * compared on the machine it was measured on. Allocation is mostly independent of the
+ * machine, and has a tighter threshold. It is only known when the benchmarks are run with
+ * the gc profiler.
+ */
+public final class RegressionCheck {
+	private static final String DEFAULT_BASELINE = "bench/baseline.properties";
+
+	private static final String TIME_SUFFIX = ".seconds", ALLOC_SUFFIX = ".bytes";
+	// bytes allocated per operation, given by the gc profiler
+	private static final String ALLOC_METRIC = "gc.alloc.rate.norm";
+
+
+	public static void main(String... args) throws Exception {
+		final Map<String, String> options = new HashMap<>();
+		for (String arg : args) {
+			final int separator = arg.indexOf('=');
+			if (!arg.startsWith("--"))
+				throw new IllegalArgumentException("Unknown argument: " + arg);
+			if (separator < 0) options.put(arg.substring(2), "");
+			else options.put(arg.substring(2, separator), arg.substring(separator + 1));
+		}
+
+		if (!options.containsKey("results"))
+			throw new IllegalArgumentException("Missing argument: --results=<file>");
+		final Path resultsFile = Paths.get(options.get("results"));
+		final Path baselineFile = Paths.get(options.getOrDefault("baseline", DEFAULT_BASELINE));
+		final boolean update = options.containsKey("update");
+		final double timeThreshold =
+				Double.parseDouble(options.getOrDefault("time-threshold", "0.25"));
+		final double allocThreshold =
+				Double.parseDouble(options.getOrDefault("alloc-threshold", "0.05"));
+
+		final Properties measured = read(resultsFile);
+		if (measured.isEmpty())
+			throw new IllegalArgumentException("No results in " + resultsFile);
+
+		if (update) {
+			final Properties baseline = load(baselineFile);
+			baseline.putAll(measured);
+			try (final Writer out = Files.newBufferedWriter(baselineFile)) {
+				baseline.store(out, "Baseline of RegressionCheck, seconds and bytes allocated per operation");
+			}
+			System.out.println("Baseline updated: " + baselineFile);
+			return;
+		}
+
+		final Properties baseline = load(baselineFile);
+		boolean failed = false;
+
+		System.out.printf("%-34s %12s %12s %8s%n", "measurement", "baseline", "current", "change");
+		for (String key : new TreeSet<>(measured.stringPropertyNames())) {
+			final double current = Double.parseDouble(measured.getProperty(key));
+			final String stored = baseline.getProperty(key);
+			if (stored == null) {
+				System.out.printf("%-34s %12s %12.6g %8s%n", key, "-", current, "new");
+				continue;
+			}
+
+			final double base = Double.parseDouble(stored);
+			final double change = (base == 0) ? 0 : (current - base) / base;
+			final double threshold = key.endsWith(TIME_SUFFIX) ? timeThreshold : allocThreshold;
+			final boolean regressed = change > threshold;
+			failed |= regressed;
+
+			System.out.printf("%-34s %12.6g %12.6g %+7.1f%%%s%n",
+					key, base, current, change * 100, regressed ? "  REGRESSION" : "");
+		}
+
+		if (failed) {
+			System.err.println("Performance regression above threshold");
+			System.exit(1);
+		}
+	}
+
+
+	/**
+	 * @return  the measurements of the specified results of JMH, keyed by stage, size and
+	 * mix, the time in seconds and the bytes allocated per operation
+	 */
+	@SuppressWarnings("unchecked")
+	private static Properties read(Path file) throws IOException {
+		final Properties measured = new Properties();
+		for (Object element : (List<Object>) new Json(Files.readString(file)).parse()) {
+			final Map<String, Object> result = (Map<String, Object>) element;
+			final String benchmark = (String) result.get("benchmark");
+			final Map<String, Object> params = (Map<String, Object>) result.get("params");
+			final String key = benchmark.substring(benchmark.lastIndexOf('.') + 1) +
+					'.' + params.get("size") + '.' + params.get("mix");
+
+			final Map<String, Object> primary = (Map<String, Object>) result.get("primaryMetric");
+			measured.setProperty(key + TIME_SUFFIX, String.valueOf(
+					score(primary) / unitsPerSecond((String) primary.get("scoreUnit"))));
+
+			final Map<String, Object> secondary =
+					(Map<String, Object>) result.get("secondaryMetrics");
+			if (secondary != null && secondary.containsKey(ALLOC_METRIC)) {
+				final double alloc = score((Map<String, Object>) secondary.get(ALLOC_METRIC));
+				measured.setProperty(key + ALLOC_SUFFIX, String.valueOf((long) alloc));
+			}
+		}
+		return measured;
+	}
+
+	private static double score(Map<String, Object> metric) {
+		// NaN is written as a string
+		final Object score = metric.get("score");
+		return (score instanceof Double) ? (Double) score : Double.parseDouble((String) score);
+	}
+
+	/**
+	 * @param unit  the unit of time per operation, as given by JMH in average time mode
+	 */
+	private static double unitsPerSecond(String unit) {
+		switch (unit) {
+			case "s/op": return 1;
+			case "ms/op": return 1e3;
+			case "us/op": return 1e6;
+			case "ns/op": return 1e9;
+			default: throw new IllegalArgumentException("Not a time per operation: " + unit);
+		}
+	}
+
+	/**
+	 * @return  the baseline, empty if the file does not exist
+	 */
+	private static Properties load(Path file) throws IOException {
+		final Properties properties = new Properties();
+		try (final Reader in = Files.newBufferedReader(file)) {
+			properties.load(in);
+		}
+		catch (NoSuchFileException e) {
+			// no baseline yet
+		}
+		return properties;
+	}
+
+
+
+	/**
+	 * A parser of the JSON written by JMH, objects are maps, arrays lists, numbers doubles.
+	 */
+	private static final class Json {
+		private final String text;
+		private int position = 0;
+
+		private Json(String text) { this.text = text; }
+
+		private Object parse() {
+			skipSpaces();
+			final char c = text.charAt(position);
+			if (c == '{') {
+				position++;
+				final Map<String, Object> object = new LinkedHashMap<>();
+				if (!next('}')) {
+					do {
+						skipSpaces();
+						final String name = string();
+						expect(':');
+						object.put(name, parse());
+					} while (next(','));
+					expect('}');
+				}
+				return object;
+			}
+			if (c == '[') {
+				position++;
+				final List<Object> array = new ArrayList<>();
+				if (!next(']')) {
+					do array.add(parse()); while (next(','));
+					expect(']');
+				}
+				return array;
+			}
+			if (c == '"') return string();
+			if (text.startsWith("true", position)) { position += 4; return Boolean.TRUE; }
+			if (text.startsWith("false", position)) { position += 5; return Boolean.FALSE; }
+			if (text.startsWith("null", position)) { position += 4; return null; }
+
+			final int start = position;
+			while (position < text.length() && "+-.0123456789eE".indexOf(text.charAt(position)) >= 0)
+				position++;
+			if (start == position) throw error();
+			return Double.parseDouble(text.substring(start, position));
+		}
+
+		private String string() {
+			if (text.charAt(position) != '"') throw error();
+			final StringBuilder s = new StringBuilder();
+			for (position++; text.charAt(position) != '"'; position++) {
+				char c = text.charAt(position);
+				if (c == '\\') {
+					c = text.charAt(++position);
+					switch (c) {
+						case 'b': c = '\b'; break;
+						case 'f': c = '\f'; break;
+						case 'n': c = '\n'; break;
+						case 'r': c = '\r'; break;
+						case 't': c = '\t'; break;
+						case 'u':
+							c = (char) Integer.parseInt(text.substring(position + 1, position + 5), 16);
+							position += 4;
+							break;
+						default:  // quote, backslash and slash
+							break;
+					}
+				}
+				s.append(c);
+			}
+			position++;
+			return s.toString();
+		}
+
+		/**
+		 * @return  whether the next character after spaces is the specified one, skipped if so
+		 */
+		private boolean next(char c) {
+			skipSpaces();
+			if (position < text.length() && text.charAt(position) == c) {
+				position++;
+				return true;
+			}
+			return false;
+		}
+
+		private void expect(char c) {
+			if (!next(c)) throw error();
+		}
+
+		private void skipSpaces() {
+			while (position < text.length() && Character.isWhitespace(text.charAt(position)))
+				position++;
+		}
+
+		private IllegalArgumentException error() {
+			return new IllegalArgumentException("Invalid JSON at offset " + position);
+		}
+	}
+}
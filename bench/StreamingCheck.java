@@ -0,0 +1,130 @@
+import html.HtmlWriter;
+import jmh.Corpus;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Checks that a streaming conversion gives the same output as the default conversion,
+ * and that it converts a document larger than the heap.
+ *
+ * <p>
+ * Usage,
+ * <pre>
+ * mvn -Pbench package
+ * java -cp target/benchmarks.jar StreamingCheck [--size=256m] [--heap=64m] [--mix=mixed] [--compare-size=4m]
+ * </pre>
+ * A document of the compare size is converted both ways, with and without mapping the
+ * input, and the outputs are compared. A document of the given size is then converted
+ * with HWtoHTML --stream in a separate JVM with the given maximum heap, which must be
+ * smaller than the document. The exit status is 1 if a check fails.
+ */
+public final class StreamingCheck {
+	private static final long SEED = 1;
+
+	public static void main(String... args) throws Exception {
+		final Map<String, String> options = new HashMap<>();
+		for (String arg : args) {
+			final int separator = arg.indexOf('=');
+			if (!arg.startsWith("--") || separator < 0)
+				throw new IllegalArgumentException("Unknown argument: " + arg);
+			options.put(arg.substring(2, separator), arg.substring(separator + 1));
+		}
+
+		final long size = Corpus.parseSize(options.getOrDefault("size", "256m"));
+		final String heap = options.getOrDefault("heap", "64m");
+		final Corpus.Mix mix = Corpus.Mix.parse(options.getOrDefault("mix", "mixed"));
+		final long compareSize = Corpus.parseSize(options.getOrDefault("compare-size", "4m"));
+		if (size <= Corpus.parseSize(heap))
+			throw new IllegalArgumentException("The document must be larger than the heap");
+
+		final Path dir = Files.createTempDirectory("streaming");
+		boolean failed = false;
+		try {
+			failed |= !compare(dir, compareSize, mix, false);
+			failed |= !compare(dir, compareSize, mix, true);
+			failed |= !convertLarge(dir, size, mix, heap);
+		}
+		finally {
+			try (var files = Files.list(dir)) {
+				for (Path file : (Iterable<Path>) files::iterator) Files.delete(file);
+			}
+			Files.delete(dir);
+		}
+
+		System.exit(failed ? 1 : 0);
+	}
+
+	/**
+	 * Converts a document both ways in this JVM and compares the outputs.
+	 * @return  whether the outputs are identical
+	 */
+	private static boolean compare(Path dir, long size, Corpus.Mix mix, boolean mapInput)
+			throws IOException {
+		final Path input = dir.resolve("compare.hw");
+		generate(input, size, mix);
+
+		final Path expected = dir.resolve("expected.html"), actual = dir.resolve("actual.html");
+		new Converter(null, null, null, false, mapInput, false, 0,
+				HtmlWriter.Format.DEFAULT, null, null, Converter.Compression.NONE)
+				.convert(input, expected);
+		new Converter(null, null, null, false, mapInput, true, 0,
+				HtmlWriter.Format.DEFAULT, null, null, Converter.Compression.NONE)
+				.convert(input, actual);
+
+		final boolean identical = Files.mismatch(expected, actual) < 0;
+		System.out.printf("%s: streaming output of %d bytes%s %s%n",
+				identical ? "OK" : "FAILED", Files.size(input), mapInput ? " mapped" : "",
+				identical ? "is identical" : "differs from the default conversion");
+		return identical;
+	}
+
+	/**
+	 * Converts a document larger than the heap in a separate JVM.
+	 * @return  whether the conversion completed
+	 */
+	private static boolean convertLarge(Path dir, long size, Corpus.Mix mix, String heap)
+			throws IOException, InterruptedException {
+		final Path input = dir.resolve("large.hw"), output = dir.resolve("large.html");
+		generate(input, size, mix);
+
+		final Process process = new ProcessBuilder(
+				Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+				"-Xmx" + heap,
+				"-cp", System.getProperty("java.class.path"),
+				"HWtoHTML", "--stream", input.toString(), output.toString())
+				.inheritIO()
+				.start();
+		final int status = process.waitFor();
+
+		// a failed write is reported but does not change the exit status
+		final boolean complete = status == 0 && Files.exists(output) && endsWith(output,
+				("</html>\n" + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+		System.out.printf("%s: %d bytes converted to %d bytes with a heap of %s%n",
+				complete ? "OK" : "FAILED", Files.size(input),
+				Files.exists(output) ? Files.size(output) : 0, heap);
+		return complete;
+	}
+
+	private static void generate(Path file, long size, Corpus.Mix mix) throws IOException {
+		try (final Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			Corpus.generate(writer, size, mix, SEED);
+		}
+	}
+
+	private static boolean endsWith(Path file, byte[] suffix) throws IOException {
+		try (final RandomAccessFile in = new RandomAccessFile(file.toFile(), "r")) {
+			if (in.length() < suffix.length) return false;
+			final byte[] end = new byte[suffix.length];
+			in.seek(in.length() - suffix.length);
+			in.readFully(end);
+			return Arrays.equals(end, suffix);
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package jmh;
+
+import hw.*;
+import html.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each stage of a conversion separately, and the whole conversion, over
+ * generated documents of several sizes and mixes of contents.
+ *
+ * <p>
+ * The benchmarks are built with the bench profile and run with JMH, with the gc profiler
+ * for the bytes allocated per operation by all threads,
+ * <pre>
+ * mvn -Pbench package
+ * java -jar target/benchmarks.jar -prof gc [-p size=10k,1m] [-p mix=text,table] [parse|convert]
+ * </pre>
+ * Sizes accept the suffixes k and m. Documents of 100m need a heap of several gigabytes,
+ * given with -jvmArgsAppend -Xmx4g. With -rf json -rff results.json the results are
+ * written for {@code RegressionCheck}.
+ *
+ * <p>
+ * Stages:
+ * <ul>
+ *     <li>parse: HWDocument.parse of the whole file</li>
+ *     <li>sections: Section.parse of the lines of every section</li>
+ *     <li>tables: Table.append of the rows of every table</li>
+ *     <li>render: Section.toHtmlContent of every section</li>
+ *     <li>serialize: writing the html document to a discarding writer</li>
+ *     <li>stream: rendering every section into a HtmlWriter to a discarding writer,
+ *     without building the html form</li>
+ *     <li>convert: the whole conversion from file to file</li>
+ *     <li>convertStream: the same conversion a section at a time</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class Benchmarks {
+	private static final long SEED = 1;
+
+	// implemented in the unnamed package, see Conversion
+	private static final String CONVERSION_CLASS = "BenchmarkConversion";
+
+	/**
+	 * The converter, which is in the unnamed package. JMH requires benchmarks to be in a
+	 * named package, which cannot refer to the unnamed one, so the implementation is
+	 * looked up by name.
+	 */
+	public interface Conversion {
+		/**
+		 * @return  the html form of the specified HW document
+		 */
+		HtmlDocument toHtml(HWDocument hwDoc, Path output);
+
+		/**
+		 * Converts the specified input from file to file.
+		 */
+		void convert(Path input, Path output) throws IOException;
+	}
+
+
+	/** Size of the generated document, see {@link Corpus#parseSize(String)}. */
+	@Param({"10k", "100k", "1m", "10m"})
+	public String size;
+
+	/** Mix of contents of the generated document, see {@link Corpus.Mix}. */
+	@Param({"text", "table", "pre"})
+	public String mix;
+
+	// the generated document and the intermediate forms each stage starts from
+	private Path input, output;
+	private final List<List<CharSequence>> sectionLines = new ArrayList<>();
+	private final List<List<CharSequence>> tableRows = new ArrayList<>();
+	private HWDocument hwDoc;
+	private HtmlDocument htmlDoc;
+	private Conversion conversion, streamingConversion;
+
+
+	@Setup
+	public void setUp() throws IOException, ReflectiveOperationException {
+		final byte[] content = Corpus.generate(Corpus.parseSize(size), Corpus.Mix.parse(mix), SEED)
+				.getBytes(StandardCharsets.UTF_8);
+
+		input = Files.createTempFile("bench", ".hw");
+		output = Files.createTempFile("bench", ".html");
+		Files.write(input, content);
+
+		final HWParser parser = new HWParser(new HWParser.Listener() {
+			@Override
+			public void sectionLines(List<CharSequence> lines) {
+				sectionLines.add(lines);
+
+				// consecutive table rows
+				List<CharSequence> rows = null;
+				for (CharSequence line : lines) {
+					if (line.length() > 0 && line.charAt(0) == '|') {
+						if (rows == null) tableRows.add(rows = new ArrayList<>());
+						rows.add(line);
+					}
+					else rows = null;
+				}
+			}
+
+			@Override
+			public void section(Section section) {}
+		});
+		parser.feed(new String(content, StandardCharsets.UTF_8));
+		parser.finish();
+
+		conversion = newConversion(false);
+		streamingConversion = newConversion(true);
+
+		hwDoc = HWDocument.parse(input);
+		htmlDoc = conversion.toHtml(hwDoc, output);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(input);
+		Files.deleteIfExists(output);
+	}
+
+
+	@Benchmark
+	public HWDocument parse() throws IOException {
+		return HWDocument.parse(input);
+	}
+
+	@Benchmark
+	public List<Section> sections() {
+		final List<Section> sections = new ArrayList<>();
+		for (List<CharSequence> lines : sectionLines)
+			sections.add(Section.parse(lines));
+		return sections;
+	}
+
+	@Benchmark
+	public List<Table> tables() {
+		final List<Table> tables = new ArrayList<>();
+		for (List<CharSequence> rows : tableRows)
+			tables.add(new Table(rows));
+		return tables;
+	}
+
+	@Benchmark
+	public List<html.Content> render() {
+		final List<html.Content> rendered = new ArrayList<>();
+		for (Section section : hwDoc.getSections())
+			rendered.add(section.toHtmlContent());
+		return rendered;
+	}
+
+	@Benchmark
+	public Writer serialize() throws IOException {
+		final Writer writer = Writer.nullWriter();
+		htmlDoc.writeTo(writer);
+		return writer;
+	}
+
+	@Benchmark
+	public Writer stream() throws IOException {
+		final Writer writer = Writer.nullWriter();
+		final HtmlWriter sink = new HtmlWriter(writer);
+		for (Section section : hwDoc.getSections())
+			section.render(sink);
+		return writer;
+	}
+
+	@Benchmark
+	public Path convert() throws IOException {
+		conversion.convert(input, output);
+		return output;
+	}
+
+	@Benchmark
+	public Path convertStream() throws IOException {
+		streamingConversion.convert(input, output);
+		return output;
+	}
+
+
+	/**
+	 * @param stream    whether the document is converted a section at a time
+	 */
+	private static Conversion newConversion(boolean stream) throws ReflectiveOperationException {
+		return Class.forName(CONVERSION_CLASS).asSubclass(Conversion.class)
+				.getConstructor(boolean.class).newInstance(stream);
+	}
+}
@@ -0,0 +1,199 @@
+package jmh;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates HW documents for benchmarks. The same seed, size and mix always give the same
+ * document.
+ *
+ * <p>
+ * Every construct recognized by {@link hw.Section#parse} is generated: multi-line text,
+ * runs of pre text, tables with several separation rows, mixed alignments and rows of
+ * different lengths, sections with only a subtitle and empty sections.
+ */
+public final class Corpus {
+
+	/** Proportion of each kind of content in the generated documents. */
+	public enum Mix {
+		/** mostly multi-line text */
+		TEXT(8, 1, 1),
+		/** mostly tables */
+		TABLE(1, 8, 1),
+		/** mostly pre-formatted text */
+		PRE(1, 1, 8),
+		/** even mix of all contents */
+		MIXED(1, 1, 1);
+
+		private final int text, table, pre;
+
+		Mix(int text, int table, int pre) {
+			this.text = text;
+			this.table = table;
+			this.pre = pre;
+		}
+
+		public static Mix parse(String s) { return valueOf(s.toUpperCase(Locale.ROOT)); }
+	}
+
+
+	private static final String[] WORDS = {
+			"the", "sum", "of", "a", "series", "converges", "if", "and", "only", "when",
+			"limit", "exists", "integral", "derivative", "matrix", "vector", "proof",
+			"therefore", "let", "be", "given", "`x^2`", "`sqrt(n)`", "`sum_(i=1)^n i`",
+			"\u00e9", "\u2200", "solution", "question", "answer"
+	};
+
+	private static final String[] SEPARATORS = { " *** |", " ***: |", " :***: |", " ***** |" };
+
+	// one in this many sections
+	private static final int EMPTY_SECTION_ODDS = 50, SUBTITLE_ONLY_ODDS = 20;
+	// one in this many table rows is followed by another separation row
+	private static final int SEPARATOR_ODDS = 10;
+
+	private Corpus() {}
+
+
+	/**
+	 * Generates a document of approximately the specified size.
+	 * @param size  the size in characters, the result may be a little larger
+	 * @param mix   the proportion of contents
+	 * @param seed  seed of the random generator
+	 */
+	public static String generate(long size, Mix mix, long seed) {
+		final StringBuilder doc = new StringBuilder();
+		try {
+			generate(doc, size, mix, seed);
+		}
+		catch (IOException e) {  // StringBuilder does not throw
+			throw new UncheckedIOException(e);
+		}
+		return doc.toString();
+	}
+
+	/**
+	 * Generates a document of approximately the specified size to the specified output,
+	 * a section at a time, for documents too large to be held in memory. The document is
+	 * the same as the one returned by {@link #generate(long, Mix, long)}.
+	 * @param size  the size in characters, the result may be a little larger
+	 * @param mix   the proportion of contents
+	 * @param seed  seed of the random generator
+	 */
+	public static void generate(Appendable out, long size, Mix mix, long seed)
+			throws IOException {
+		final Random random = new Random(seed);
+		final StringBuilder doc = new StringBuilder();
+		long length = 0;
+
+		doc.append("Generated Homework ").append(seed).append('\n');
+		doc.append("Benchmark Author\n\n");
+
+		for (int section = 0; length + doc.length() < size; section++) {
+			// written a section at a time
+			length += doc.length();
+			out.append(doc);
+			doc.setLength(0);
+
+			// an extra empty line after a section break is an empty section
+			if (section > 0 && random.nextInt(EMPTY_SECTION_ODDS) == 0)
+				doc.append('\n');
+
+			doc.append("Question ").append(section + 1).append('\n');
+
+			// subtitle only
+			if (random.nextInt(SUBTITLE_ONLY_ODDS) == 0) {
+				doc.append("\n\n");
+				continue;
+			}
+
+			final int paragraphs = 1 + random.nextInt(4);
+			for (int p = 0; p < paragraphs; p++) {
+				final int pick = random.nextInt(mix.text + mix.table + mix.pre);
+				if (pick < mix.text)
+					text(doc, random);
+				else if (pick < mix.text + mix.table)
+					table(doc, random);
+				else
+					pre(doc, random);
+
+				// contents of different kinds without an empty line share a paragraph
+				if (p == paragraphs-1 || random.nextInt(4) != 0)
+					doc.append('\n');
+			}
+
+			// section break
+			doc.append('\n');
+		}
+
+		out.append(doc);
+	}
+
+	/**
+	 * @return  the specified size in characters, which accepts the suffixes k and m
+	 */
+	public static long parseSize(String size) {
+		final String s = size.toLowerCase(Locale.ROOT);
+		if (s.endsWith("k")) return Long.parseLong(s.substring(0, s.length()-1)) << 10;
+		if (s.endsWith("m")) return Long.parseLong(s.substring(0, s.length()-1)) << 20;
+		return Long.parseLong(s);
+	}
+
+
+	private static void text(StringBuilder doc, Random random) {
+		final int lines = 1 + random.nextInt(5);
+		for (int i = 0; i < lines; i++) {
+			final int words = 3 + random.nextInt(15);
+			for (int w = 0; w < words; w++) {
+				if (w > 0) doc.append(' ');
+				doc.append(WORDS[random.nextInt(WORDS.length)]);
+			}
+			doc.append('\n');
+		}
+	}
+
+	private static void pre(StringBuilder doc, Random random) {
+		final int lines = 2 + random.nextInt(10);
+		for (int i = 0; i < lines; i++) {
+			doc.append("//");
+			for (int indent = random.nextInt(4); indent > 0; indent--) doc.append("    ");
+			doc.append("x").append(i).append(" = f(x").append(i).append(", ")
+					.append(random.nextInt(1000)).append(");\n");
+		}
+	}
+
+	private static void table(StringBuilder doc, Random random) {
+		final int columns = 2 + random.nextInt(5);
+		final int rows = 2 + random.nextInt(30);
+
+		// a separation row first gives a table without header
+		if (random.nextBoolean())
+			row(doc, random, columns, "h");
+		separator(doc, random, columns);
+
+		for (int r = 0; r < rows; r++) {
+			// some rows have fewer or more cells
+			final int length = (random.nextInt(8) == 0) ? 1 + random.nextInt(columns + 1) : columns;
+			row(doc, random, length, "");
+
+			// the row becomes a header row
+			if (random.nextInt(SEPARATOR_ODDS) == 0)
+				separator(doc, random, 1 + random.nextInt(columns + 1));
+		}
+	}
+
+	private static void separator(StringBuilder doc, Random random, int columns) {
+		doc.append('|');
+		for (int c = 0; c < columns; c++)
+			doc.append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+		doc.append('\n');
+	}
+
+	private static void row(StringBuilder doc, Random random, int columns, String prefix) {
+		doc.append('|');
+		for (int c = 0; c < columns; c++)
+			doc.append(' ').append(prefix).append(random.nextInt(100)).append(" |");
+		doc.append('\n');
+	}
+}
@@ -0,0 +1,122 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The css and script shared by all pages, written once as separate files instead of
+ * being inlined in every page. Each file name contains a hash of its content, such as
+ * base.0123456789ab.css, so the files never change and may be cached indefinitely.
+ *
+ * <p>
+ * The script is a MathJax configuration, which MathJax only reads from inline
+ * text/x-mathjax-config elements. The asset wraps it in a MathJax.AuthorInit function
+ * instead, which MathJax runs at the same point of its startup.
+ */
+final class Assets {
+	private static final int HASH_LENGTH = 12;
+
+	private final List<Path> stylesheets;
+	private final Path script;
+
+	private Assets(List<Path> stylesheets, Path script) {
+		this.stylesheets = stylesheets;
+		this.script = script;
+	}
+
+	/**
+	 * @return  the stylesheets in the order they are to be linked
+	 */
+	List<Path> getStylesheets() { return Collections.unmodifiableList(stylesheets); }
+
+	/**
+	 * @return  the script, null if there is none
+	 */
+	Path getScript() { return script; }
+
+
+	/**
+	 * Writes the assets to the specified directory, files already present are kept.
+	 * @param baseCSS   may be null
+	 * @param customCSS may be null
+	 * @param script    MathJax configuration, may be null
+	 */
+	static Assets write(
+			final Path dir,
+			final String baseCSS,
+			final String customCSS,
+			final String script) throws IOException {
+		Files.createDirectories(dir);
+
+		final List<Path> stylesheets = new ArrayList<>();
+		if (baseCSS != null && !baseCSS.isEmpty())
+			stylesheets.add(writeAsset(dir, "base", ".css", baseCSS));
+		if (customCSS != null && !customCSS.isEmpty())
+			stylesheets.add(writeAsset(dir, "custom", ".css", customCSS));
+
+		Path scriptFile = null;
+		if (script != null && !script.isEmpty()) {
+			final String wrapped =
+					"window.MathJax = {AuthorInit: function () {\n" + script + "}};\n";
+			scriptFile = writeAsset(dir, "script", ".js", wrapped);
+		}
+
+		return new Assets(stylesheets, scriptFile);
+	}
+
+	/**
+	 * @return  the path of the asset file relative to the directory of the page, with '/'
+	 * as separator
+	 */
+	static String href(final Path asset, final Path page) {
+		final Path pageDir = page.toAbsolutePath().normalize().getParent();
+		final Path relative = pageDir.relativize(asset.toAbsolutePath().normalize());
+
+		final List<String> names = new ArrayList<>();
+		relative.forEach(name -> names.add(name.toString()));
+		return String.join("/", names);
+	}
+
+
+	private static Path writeAsset(
+			final Path dir,
+			final String name,
+			final String extension,
+			final String content) throws IOException {
+		final byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+		final Path file = dir.resolve(name + '.' + hash(bytes) + extension);
+
+		// same name means same content, concurrent runs may write it at the same time
+		if (!Files.exists(file)) {
+			final Path temp = Files.createTempFile(dir, name, ".tmp");
+			try {
+				Files.write(temp, bytes);
+				Files.move(temp, file,
+						StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			finally {
+				Files.deleteIfExists(temp);
+			}
+		}
+
+		return file;
+	}
+
+	private static String hash(final byte[] bytes) {
+		try {
+			final StringBuilder hex = new StringBuilder();
+			for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes))
+				hex.append(String.format("%02x", b));
+			return hex.substring(0, HASH_LENGTH);
+		}
+		catch (NoSuchAlgorithmException e) {  // required on every platform
+			throw new AssertionError(e);
+		}
+	}
+}
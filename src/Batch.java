@@ -0,0 +1,221 @@
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Converts many HW documents in a single run, in parallel on a bounded work stealing
+ * pool. Configuration and css are loaded once for the whole run. A failed conversion is
+ * reported and does not stop the others, a summary is printed at the end.
+ *
+ * <p>
+ * Inputs may be given as
+ * <ul>
+ *     <li>a directory, all *.hw files in the directory tree are converted, the
+ *     directory structure is kept in the output directory</li>
+ *     <li>a glob pattern, such as <code>notes/**&#47;*.hw</code>, the structure below the
+ *     part of the pattern without wildcards is kept in the output directory</li>
+ *     <li>a manifest, <code>@file</code>, listing further inputs one per line, blank
+ *     lines and lines starting with '#' are ignored, relative paths are resolved
+ *     against the directory of the manifest</li>
+ *     <li>a single file, converted into the output directory</li>
+ * </ul>
+ * Output files are named after the input, with the extension ".hw" replaced by ".html".
+ * With a {@link Manifest}, outputs are converted only if anything they depend on changed.
+ */
+final class Batch {
+	private static final String HW_EXTENSION = ".hw";
+	private static final String HTML_EXTENSION = ".html";
+	private static final String GLOB_CHARACTERS = "*?[{";
+
+	/** A single conversion. */
+	private static final class Job {
+		private final Path input, output;
+
+		private Job(Path input, Path output) {
+			this.input = input;
+			this.output = output;
+		}
+	}
+
+
+	private final Converter converter;
+	private final Path outputDir;
+	private final int threads;
+	private final Manifest manifest;
+
+	/**
+	 * @param converter the converter used for all inputs
+	 * @param outputDir the directory where output files are placed
+	 * @param threads   the maximum number of conversions running at the same time
+	 * @param manifest  the outputs converted before, null to convert all inputs
+	 */
+	Batch(Converter converter, Path outputDir, int threads, Manifest manifest) {
+		this.converter = converter;
+		this.outputDir = outputDir;
+		this.threads = threads;
+		this.manifest = manifest;
+	}
+
+
+	/**
+	 * Converts all inputs specified by the sources, prints failures as they happen and a
+	 * summary at the end.
+	 * @return  the number of failed conversions
+	 */
+	int run(List<String> sources) throws IOException {
+		final long start = System.nanoTime();
+
+		final List<Job> jobs = new ArrayList<>();
+		for (String source : sources)
+			collect(source, Paths.get(""), jobs);
+
+		final AtomicLong bytesRead = new AtomicLong();
+		final List<Path> failed = Collections.synchronizedList(new ArrayList<>());
+
+		final ExecutorService pool = Executors.newWorkStealingPool(threads);
+		for (Job job : jobs) {
+			pool.execute(() -> {
+				try {
+					final Path written = converter.outputFile(job.output);
+					if (manifest != null && manifest.isUpToDate(job.input, written)) return;
+
+					final Path parent = job.output.getParent();
+					if (parent != null) Files.createDirectories(parent);
+
+					converter.convert(job.input, job.output);
+					bytesRead.addAndGet(Files.size(job.input));
+					if (manifest != null) manifest.converted(written);
+				}
+				catch (Exception e) {
+					System.err.printf("Failed to convert '%s': %s%n", job.input, e);
+					failed.add(job.input);
+				}
+			});
+		}
+
+		pool.shutdown();
+		try {
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+		catch (InterruptedException e) {
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+
+		// the outputs converted are recorded even if some failed
+		if (manifest != null) {
+			try {
+				manifest.save();
+			}
+			catch (IOException e) {
+				System.err.println("Failed to save the manifest: " + e);
+			}
+		}
+
+		final double seconds = (System.nanoTime() - start) / 1e9;
+		final int skipped = (manifest == null) ? 0 : manifest.getSkipped();
+		final int converted = jobs.size() - failed.size() - skipped;
+		final double megabytes = bytesRead.get() / (1024.0 * 1024.0);
+
+		System.out.printf("Converted %d of %d files in %.2f s, %.1f files/s, %.2f MB/s%n",
+				converted, jobs.size() - skipped, seconds, converted / seconds, megabytes / seconds);
+		if (!failed.isEmpty()) {
+			System.out.printf("%d failed:%n", failed.size());
+			failed.stream().sorted().forEach(path -> System.out.println(path));
+		}
+
+		return failed.size();
+	}
+
+
+	/**
+	 * Adds the jobs specified by the source to the list.
+	 * @param base  the directory relative paths are resolved against
+	 */
+	private void collect(String source, Path base, List<Job> jobs) throws IOException {
+		// manifest
+		if (source.startsWith("@")) {
+			final Path manifest = base.resolve(source.substring(1));
+			final Path manifestDir =
+					manifest.getParent() == null ? Paths.get("") : manifest.getParent();
+
+			for (String line : Files.readAllLines(manifest)) {
+				line = line.strip();
+				if (line.isEmpty() || line.startsWith("#")) continue;
+				collect(line, manifestDir, jobs);
+			}
+			return;
+		}
+
+		// glob
+		final int firstGlobChar = indexOfGlobCharacter(source);
+		if (firstGlobChar >= 0) {
+			final int lastSeparator =
+					source.lastIndexOf(base.getFileSystem().getSeparator(), firstGlobChar);
+			final Path root = base.resolve(
+					lastSeparator < 0 ? "" : source.substring(0, lastSeparator + 1));
+			final PathMatcher matcher =
+					FileSystems.getDefault().getPathMatcher(
+							"glob:" + base.resolve(source));
+
+			for (Path file : walk(root)) {
+				if (matcher.matches(file))
+					jobs.add(new Job(file, outputFor(root.relativize(file))));
+			}
+			return;
+		}
+
+		// directory or single file
+		final Path path = base.resolve(source);
+		if (Files.isDirectory(path)) {
+			for (Path file : walk(path)) {
+				if (file.getFileName().toString().endsWith(HW_EXTENSION))
+					jobs.add(new Job(file, outputFor(path.relativize(file))));
+			}
+		}
+		else
+			jobs.add(new Job(path, outputFor(path.getFileName())));
+	}
+
+	/**
+	 * @return  the regular files in the directory tree, in a stable order
+	 */
+	private static List<Path> walk(Path root) throws IOException {
+		try (final Stream<Path> files = Files.walk(root)) {
+			return files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * @return  the output path of an input at the specified path relative to its root
+	 */
+	private Path outputFor(Path relativeInput) {
+		final String name = relativeInput.getFileName().toString();
+		final String htmlName =
+				name.endsWith(HW_EXTENSION) ?
+						name.substring(0, name.length() - HW_EXTENSION.length()) + HTML_EXTENSION :
+						name + HTML_EXTENSION;
+
+		return outputDir.resolve(relativeInput).resolveSibling(htmlName);
+	}
+
+	private static int indexOfGlobCharacter(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			if (GLOB_CHARACTERS.indexOf(s.charAt(i)) >= 0)
+				return i;
+		}
+		return -1;
+	}
+}
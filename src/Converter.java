@@ -0,0 +1,1009 @@
+import hw.*;
+import html.*;
+import trace.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.Deflater;
+
+/**
+ * Converts HW documents to html documents with a fixed css, engine and script. A
+ * Converter holds no mutable state, a single instance may be shared by any number of
+ * conversions running at the same time.
+ */
+final class Converter {
+	// number of sections from which sections are rendered in parallel
+	private static final int PARALLEL_THRESHOLD = 64;
+
+	// number of sections rendered in parallel at a time, when written as rendered
+	private static final int PARALLEL_BATCH = 256;
+
+	// size of the reads of a piped input
+	private static final int PIPE_BUFFER_SIZE = 64 * 1024;
+
+	private static final Attribute STRICT_CENTER = Attribute.shared("class", "strictCenter");
+	private static final Attribute TITLE_ID = Attribute.shared("id", "title");
+	private static final Attribute AUTHOR_ID = Attribute.shared("id", "author");
+	private static final Attribute SECTION = Attribute.shared("class", "section");
+	private static final Attribute MATH_SECTION = Attribute.shared("class", "section math");
+
+	// with lazy math, the engine does not typeset the whole body once loaded
+	private static final String LAZY_MATH_CONFIG =
+			"window.MathJax = window.MathJax || {};\n" +
+			"MathJax.skipStartupTypeset = true;";
+	// typesets the title and author at once, each math section once it is about to
+	// scroll into view
+	private static final String LAZY_MATH_TYPESET =
+			"(function () {\n" +
+			"  var sections = document.querySelectorAll('.section.math');\n" +
+			"  var typeset = function (section) {\n" +
+			"    MathJax.Hub.Queue(['Typeset', MathJax.Hub, section]);\n" +
+			"  };\n" +
+			"  ['title', 'author'].forEach(function (id) {\n" +
+			"    var header = document.getElementById(id);\n" +
+			"    if (header) typeset(header);\n" +
+			"  });\n" +
+			"  if (!('IntersectionObserver' in window)) {\n" +
+			"    sections.forEach(typeset);\n" +
+			"    return;\n" +
+			"  }\n" +
+			"  var observer = new IntersectionObserver(function (entries) {\n" +
+			"    entries.forEach(function (entry) {\n" +
+			"      if (!entry.isIntersecting) return;\n" +
+			"      observer.unobserve(entry.target);\n" +
+			"      typeset(entry.target);\n" +
+			"    });\n" +
+			"  }, { rootMargin: '50% 0px' });\n" +
+			"  sections.forEach(function (section) { observer.observe(section); });\n" +
+			"})();";
+
+	private final String css, engine, script;
+	private final boolean lazyMath, mapInput, stream;
+	private final int tableChunkRows;
+	private final HtmlWriter.Format format;
+	private final SectionCache cache;
+	private final Assets assets;
+	private final Compression compression;
+	private final ParallelGzip.Totals gzipTotals = new ParallelGzip.Totals();
+
+	/** How html files are compressed. */
+	enum Compression {
+		/** only the html file */
+		NONE,
+		/** a gzip file next to the html file, named after it with ".gz" appended */
+		GZIP,
+		/** only the gzip file */
+		GZIP_ONLY
+	}
+
+	/**
+	 * @param css   the css source code to be included in the resulting html documents
+	 * @param engine    the location of the engine
+	 * @param script  configuration for the engine
+	 * @param lazyMath  whether the engine is loaded only by documents with math, at the
+	 *                  end of the body, and typesets the sections with math as they
+	 *                  scroll into view instead of the whole body once loaded
+	 * @param mapInput  whether the input files are mapped into memory
+	 * @param stream    whether the input files are converted a section at a time, see
+	 *                  {@link #convert(Path, Path)}
+	 * @param tableChunkRows    rows of each chunk of compact tables, 0 if tables are not
+	 *                          compact, see {@link hw.Table#setChunkRows(int)}
+	 * @param format    how the html source is laid out
+	 * @param cache rendered sections cache, may be null
+	 * @param assets    css and script linked from the documents instead of the inlined css
+	 *                  and script, may be null
+	 * @param compression   whether the html files are compressed
+	 */
+	Converter(
+			String css,
+			String engine,
+			String script,
+			boolean lazyMath,
+			boolean mapInput,
+			boolean stream,
+			int tableChunkRows,
+			HtmlWriter.Format format,
+			SectionCache cache,
+			Assets assets,
+			Compression compression) {
+		this.css = css;
+		this.engine = engine;
+		this.script = script;
+		this.lazyMath = lazyMath;
+		this.mapInput = mapInput;
+		this.stream = stream;
+		this.tableChunkRows = tableChunkRows;
+		this.format = format;
+		this.cache = cache;
+		this.assets = assets;
+		this.compression = compression;
+	}
+
+	/**
+	 * @return  the rendered sections cache, null if not used
+	 */
+	SectionCache getCache() { return cache; }
+
+	/**
+	 * @return  the totals of all compressed files, null if files are not compressed
+	 */
+	ParallelGzip.Totals getGzipTotals() {
+		return (compression == Compression.NONE) ? null : gzipTotals;
+	}
+
+
+	/**
+	 * @return  whether the input files are converted a section at a time
+	 */
+	boolean isStreaming() { return stream; }
+
+
+	/**
+	 * Reads the specified input, converts it, and writes the result to the specified
+	 * output. If streaming, each section is read, parsed, rendered and written before
+	 * the next one is read, memory is bounded by the largest section instead of the
+	 * document. The output is the same either way.
+	 */
+	void convert(Path input, Path output) throws IOException {
+		convert(input, output, null);
+	}
+
+	/**
+	 * Converts the specified input as {@link #convert(Path, Path)} does.
+	 * @param serialized    run once the document is rendered into the output, before what
+	 *                      remains buffered is written and the output closed, null if none
+	 */
+	void convert(Path input, Path output, Runnable serialized) throws IOException {
+		final ConversionEvent event = beginConversion();
+		if (stream)
+			writeOutput(out -> writeTo(input, output, out), output, serialized);
+		// without a cache, the document is written as it is rendered
+		else if (cache == null)
+			writeOutput(read(input), output, serialized);
+		else
+			writeOutput(toHtml(input, output), output, serialized);
+		endConversion(event, input, outputFile(output));
+	}
+
+	/**
+	 * Reads a HW document from the specified channel, such as standard input, converts
+	 * it a section at a time whether streaming or not, and writes the result to the
+	 * specified output. The channel is not closed.
+	 */
+	void convert(ReadableByteChannel in, Path output) throws IOException {
+		final ConversionEvent event = beginConversion();
+		writeOutput(out -> writeTo(parser -> parser.feedAll(in), output, out), output, null);
+		endConversion(event, null, outputFile(output));
+	}
+
+	/**
+	 * Reads a HW document from the specified channel and writes the html document to the
+	 * other, such as standard input and output, a section at a time whether streaming or
+	 * not. What is rendered is written after each read, so the output of a pipeline
+	 * starts with the head and the first section instead of once the input ends. The
+	 * channels are not closed, compression is not used.
+	 * @param output    where the html document is linked from, for shared assets
+	 */
+	void convert(ReadableByteChannel in, GatheringByteChannel channel, Path output)
+			throws IOException {
+		final ConversionEvent event = beginConversion();
+		final Utf8Output out = new Utf8Output(channel);
+		try (out) {
+			writeTo(parser -> {
+				final ByteBuffer buffer = ByteBuffer.allocate(PIPE_BUFFER_SIZE);
+				// what is rendered is written before waiting for more input
+				out.flush();
+				while (in.read(buffer) != -1) {
+					buffer.flip();
+					parser.feed(buffer);
+					buffer.clear();
+					out.flush();
+				}
+			}, output, out);
+			out.append(System.lineSeparator());
+		}
+		endConversion(event, null, output, out.getBytesWritten());
+	}
+
+	/**
+	 * Begins the event recording a whole conversion.
+	 */
+	static ConversionEvent beginConversion() {
+		final ConversionEvent event = new ConversionEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Ends the event recording a whole conversion, once the output is written.
+	 * @param input the file converted, null if read from a channel such as standard input
+	 */
+	static void endConversion(ConversionEvent event, Path input, Path output)
+			throws IOException {
+		event.end();
+		if (event.shouldCommit())
+			commitConversion(event, input, output, Files.size(output));
+	}
+
+	/**
+	 * Ends the event recording a whole conversion written to a channel, such as standard
+	 * output, which cannot be measured afterwards.
+	 */
+	private static void endConversion(
+			ConversionEvent event, Path input, Path output, long bytesWritten) {
+		event.end();
+		if (event.shouldCommit())
+			commitConversion(event, input, output, bytesWritten);
+	}
+
+	private static void commitConversion(
+			ConversionEvent event, Path input, Path output, long bytesWritten) {
+		event.input = (input == null) ? null : input.toString();
+		event.output = output.toString();
+		event.bytesWritten = bytesWritten;
+		event.commit();
+	}
+
+	/**
+	 * Reads and translates the specified HW document to a html document. If a cache is
+	 * used, sections found in the cache are neither parsed nor rendered.
+	 * @param output    where the html document is to be written
+	 */
+	HtmlDocument toHtml(Path input, Path output) throws IOException {
+		if (cache == null) return toHtml(read(input), output);
+
+		final String[] header = new String[2];
+		final List<List<CharSequence>> sectionLines = new ArrayList<>();
+
+		final HWParser parser = new HWParser(new HWParser.Listener() {
+			@Override
+			public void header(String title, String author) {
+				header[0] = title;
+				header[1] = author;
+			}
+
+			@Override
+			public void sectionLines(List<CharSequence> lines) { sectionLines.add(lines); }
+
+			@Override
+			public void section(Section section) { throw new AssertionError(); }
+		});
+
+		try (final FileChannel channel = FileChannel.open(input)) {
+			if (mapInput)
+				parser.feedMapped(channel);
+			else
+				parser.feedAll(channel);
+		}
+		parser.finish();
+
+		final IntStream indices = IntStream.range(0, sectionLines.size());
+		final List<Element> sections =
+				(sectionLines.size() >= PARALLEL_THRESHOLD ? indices.parallel() : indices)
+						.mapToObj(i -> render(i, true, () -> cache.render(sectionLines.get(i))))
+						.collect(Collectors.toList());
+
+		try {
+			cache.evictIfNeeded();
+		}
+		catch (IOException e) {
+			System.err.println("Failed to evict cached sections");
+			e.printStackTrace();
+		}
+
+		return toHtml(header[0], header[1], sections, output);
+	}
+
+	/**
+	 * Reads the specified HW document.
+	 */
+	HWDocument read(Path input) throws IOException {
+		final HWDocument hwDoc = mapInput ? HWDocument.parseMapped(input) : HWDocument.parse(input);
+		if (tableChunkRows > 0) {
+			for (hw.Section section : hwDoc.getSections())
+				section.setTableChunkRows(tableChunkRows);
+		}
+		return hwDoc;
+	}
+
+	/**
+	 * Parses the section with the specified lines, with its tables rendered as
+	 * configured.
+	 */
+	hw.Section parse(List<? extends CharSequence> lines) {
+		final hw.Section section = hw.Section.parse(lines);
+		if (tableChunkRows > 0) section.setTableChunkRows(tableChunkRows);
+		return section;
+	}
+
+	/**
+	 * Translates the specified HW document to a html document.
+	 * @param output    where the html document is to be written
+	 */
+	HtmlDocument toHtml(HWDocument hwDoc, Path output) {
+		// sections are independent, render them in parallel unless there are only a few
+		final List<hw.Section> hwSections = hwDoc.getSections();
+		final IntStream indices = IntStream.range(0, hwSections.size());
+		final List<Element> sections =
+				(hwSections.size() >= PARALLEL_THRESHOLD ? indices.parallel() : indices)
+						.mapToObj(i -> render(i, false, hwSections.get(i)::toHtmlContent))
+						.collect(Collectors.toList());
+
+		return toHtml(hwDoc.getTitle(), hwDoc.getAuthor(), sections, output);
+	}
+
+	/**
+	 * Renders a single section, recorded as a SectionRenderEvent.
+	 * @param index the index of the section in the document
+	 * @param cached    whether the rendered sections cache is used
+	 */
+	private static <T> T render(int index, boolean cached, Supplier<T> renderer) {
+		final long allocation = Allocation.begin();
+		final SectionRenderEvent event = beginRender();
+		final T section = renderer.get();
+		endRender(event, index, cached);
+		Allocation.end(allocation);
+		return section;
+	}
+
+	private static SectionParseEvent beginParse() {
+		final SectionParseEvent event = new SectionParseEvent();
+		event.begin();
+		return event;
+	}
+
+	private static void endParse(SectionParseEvent event, int index, int lineCount) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.sectionIndex = index;
+			event.lineCount = lineCount;
+			event.commit();
+		}
+	}
+
+	private static SectionRenderEvent beginRender() {
+		final SectionRenderEvent event = new SectionRenderEvent();
+		event.begin();
+		return event;
+	}
+
+	private static void endRender(SectionRenderEvent event, int index, boolean cached) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.sectionIndex = index;
+			event.cached = cached;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Assembles a html document from the parts of a HW document. The section elements are
+	 * not modified, they may be shared by several documents.
+	 * @param sections  html form of each section, as returned by
+	 *                  {@link hw.Section#toHtmlContent()}
+	 * @param output    where the html document is to be written
+	 */
+	HtmlDocument toHtml(
+			String hwTitle,
+			String hwAuthor,
+			List<? extends Element> sections,
+			Path output) {
+		final HtmlDocument htmlDoc = new HtmlDocument();
+		htmlDoc.appendContent(newHead(output));
+
+		final TreeBuilder body = new TreeBuilder();
+		try {
+			renderBody(body, hwTitle, hwAuthor, sections.size(), output, (i, sink) -> {
+				final boolean math = lazyMath && hasMath(sections.get(i));
+				render(sink, i, math, sections.get(i));
+				return math;
+			});
+		}
+		catch (IOException e) {  // TreeBuilder does not throw
+			throw new UncheckedIOException(e);
+		}
+		htmlDoc.appendContent(body.getContents().get(0));
+
+		return htmlDoc;
+	}
+
+	/**
+	 * Renders the specified HW document to the specified output, the same as the html
+	 * document returned by {@link #toHtml(HWDocument, Path)} is written, but without
+	 * building it. Large documents are rendered in parallel a batch of sections at a
+	 * time, each section to a string, if there is more than one processor.
+	 * @param output    where the html document is to be written
+	 */
+	void writeTo(HWDocument hwDoc, Path output, Appendable out) throws IOException {
+		final List<hw.Section> hwSections = hwDoc.getSections();
+
+		// rendering to strings only pays off if they are rendered in parallel
+		final SectionRenderer sections;
+		// indented sections are indented by their depth in the document
+		if (hwSections.size() < PARALLEL_THRESHOLD ||
+				    ForkJoinPool.getCommonPoolParallelism() < 2 ||
+				    format == HtmlWriter.Format.PRETTY)
+			sections = (i, sink) -> {
+				final SectionRenderEvent event = beginRender();
+				final boolean math = lazyMath && hwSections.get(i).hasMath();
+				hwSections.get(i).render(sink, sectionAttributes(i, math));
+				endRender(event, i, false);
+				return math;
+			};
+		else {
+			final String[] batch = new String[PARALLEL_BATCH];
+			final boolean[] batchMath = new boolean[PARALLEL_BATCH];
+			sections = (i, sink) -> {
+				if (i % PARALLEL_BATCH == 0) {
+					IntStream.range(i, Math.min(i + PARALLEL_BATCH, hwSections.size()))
+							.parallel()
+							.forEach(j -> batch[j - i] = render(j, false, () -> {
+								final StringBuilder builder = new StringBuilder();
+								batchMath[j - i] = lazyMath && hwSections.get(j).hasMath();
+								try {
+									hwSections.get(j).render(new HtmlWriter(builder, format),
+											sectionAttributes(j, batchMath[j - i]));
+								}
+								catch (IOException e) {  // StringBuilder does not throw
+									throw new UncheckedIOException(e);
+								}
+								return builder.toString();
+							}));
+				}
+				sink.text(batch[i % PARALLEL_BATCH]);
+				batch[i % PARALLEL_BATCH] = null;
+				return batchMath[i % PARALLEL_BATCH];
+			};
+		}
+
+		final HtmlWriter sink = new HtmlWriter(out, format);
+		sink.doctype();
+		sink.startElement("html");
+		sink.content(newHead(output));
+		renderBody(sink, hwDoc.getTitle(), hwDoc.getAuthor(), hwSections.size(), output, sections);
+		sink.endElement();
+	}
+
+	/**
+	 * Renders the specified HW document to the specified output a section at a time, as
+	 * it is read. Sections are rendered in the order of the document, with the cache if
+	 * one is used.
+	 * @param output    where the html document is to be written
+	 */
+	private void writeTo(Path input, Path output, Appendable out) throws IOException {
+		try (final FileChannel channel = FileChannel.open(input)) {
+			if (mapInput)
+				writeTo(parser -> parser.feedMapped(channel), output, out);
+			else
+				writeTo(parser -> parser.feedAll(channel), output, out);
+		}
+	}
+
+	/**
+	 * The input of a streaming conversion, pushed to the parser without finishing it.
+	 */
+	private interface Input {
+		void feedTo(HWParser parser) throws IOException;
+	}
+
+	private void writeTo(Input input, Path output, Appendable out) throws IOException {
+		final HtmlWriter sink = new HtmlWriter(out, format);
+		sink.doctype();
+		sink.startElement("html");
+		sink.content(newHead(output));
+
+		// whether the title, author or any section has math
+		final boolean[] math = {false};
+
+		// the listener cannot throw IOException, rethrown once the parser returns
+		final HWParser parser = new HWParser(new HWParser.Listener() {
+			private int index = 0;
+
+			@Override
+			public void header(String title, String author) {
+				try {
+					math[0] |= beginBody(sink, title, author);
+				}
+				catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+
+			@Override
+			public void sectionLines(List<CharSequence> lines) {
+				final int i = index++;
+				final SectionRenderEvent event = beginRender();
+				try {
+					if (cache != null) {
+						final Element section = cache.render(lines);
+						final boolean sectionMath = lazyMath && hasMath(section);
+						render(sink, i, sectionMath, section);
+						math[0] |= sectionMath;
+					}
+					else {
+						final SectionParseEvent parseEvent = beginParse();
+						final hw.Section section = parse(lines);
+						endParse(parseEvent, i, lines.size());
+
+						final boolean sectionMath = lazyMath && section.hasMath();
+						section.render(sink, sectionAttributes(i, sectionMath));
+						math[0] |= sectionMath;
+					}
+				}
+				catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				endRender(event, i, cache != null);
+			}
+
+			@Override
+			public void section(Section section) { throw new AssertionError(); }
+		});
+
+		try {
+			input.feedTo(parser);
+			parser.finish();
+		}
+		catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		endBody(sink, math[0], output);
+		sink.endElement();  // html
+
+		if (cache != null) {
+			try {
+				cache.evictIfNeeded();
+			}
+			catch (IOException e) {
+				System.err.println("Failed to evict cached sections");
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Renders the html form of a section, with the attributes of
+	 * {@link #sectionAttributes(int, boolean)} added to its element.
+	 * @param section   as returned by {@link hw.Section#toHtmlContent()}
+	 */
+	private static void render(HtmlSink sink, int index, boolean math, Element section)
+			throws IOException {
+		sink.startElement(section.getName());
+		for (Attribute attribute : section.getAttributes())
+			sink.attribute(attribute);
+		for (Attribute attribute : sectionAttributes(index, math))
+			sink.attribute(attribute);
+		for (html.Content content : section.getContents())
+			sink.content(content);
+		sink.endElement();
+	}
+
+	/**
+	 * Renders a single section into a sink, with the attributes of
+	 * {@link #sectionAttributes(int, boolean)} added to its element.
+	 */
+	private interface SectionRenderer {
+		/**
+		 * @return  whether the section has math, always false unless math is lazy
+		 */
+		boolean render(int index, HtmlSink sink) throws IOException;
+	}
+
+	/**
+	 * @return  the attributes added to the element of the section with the specified
+	 * index, sections are indexed to make them easier to refer to in CSS. Sections with
+	 * math are marked to be typeset when math is lazy.
+	 */
+	private static Attribute[] sectionAttributes(int index, boolean math) {
+		return new Attribute[] {
+				math ? MATH_SECTION : SECTION, new Attribute("id", "section" + index) };
+	}
+
+	/**
+	 * @return  whether the text of the specified html content contains math, the same
+	 * as {@link hw.Content#hasMath()} of the content it is the html form of
+	 */
+	private static boolean hasMath(html.Content content) {
+		if (content instanceof Element) {
+			for (html.Content child : ((Element) content).getContents()) {
+				if (hasMath(child)) return true;
+			}
+			return false;
+		}
+		if (content instanceof Lines) {
+			for (CharSequence line : ((Lines) content).getLines()) {
+				if (MathDelimiters.containsMath(line)) return true;
+			}
+			return false;
+		}
+		return MathDelimiters.containsMath(content.toString());
+	}
+
+	/**
+	 * Renders the body of a html document for the parts of a HW document.
+	 * @param output    where the html document is to be written
+	 * @param sections  renders each section
+	 */
+	private void renderBody(
+			HtmlSink sink,
+			String hwTitle,
+			String hwAuthor,
+			int sectionCount,
+			Path output,
+			SectionRenderer sections) throws IOException {
+		boolean math = beginBody(sink, hwTitle, hwAuthor);
+
+		// contents, typically questions and solutions
+		for (int i = 0; i < sectionCount; i++)
+			math |= sections.render(i, sink);
+
+		endBody(sink, math, output);
+	}
+
+	/**
+	 * Ends the body of a html document, after the sections. With lazy math, the engine
+	 * is loaded here if the title, author or any section has math, once the sections are
+	 * in the page.
+	 * @param math  whether the title, author or any section has math
+	 * @param output    where the html document is to be written
+	 */
+	private void endBody(HtmlSink sink, boolean math, Path output) throws IOException {
+		if (math && engine != null && !engine.isEmpty()) {
+			// config engine, must precede the engine
+			if (assets != null) {
+				if (assets.getScript() != null) {
+					sink.startElement("script");
+					sink.attribute(new Attribute("src", Assets.href(assets.getScript(), output)));
+					sink.endElement();
+				}
+			}
+			else if (script != null && !script.isEmpty()) {
+				sink.startElement("script");
+				sink.attribute(new Attribute("type", "text/x-mathjax-config"));
+				sink.text(script);
+				sink.endElement();
+			}
+
+			sink.startElement("script");
+			sink.text(LAZY_MATH_CONFIG);
+			sink.endElement();
+
+			sink.startElement("script");
+			sink.attribute(new Attribute("src", engine));
+			sink.endElement();
+
+			sink.startElement("script");
+			sink.text(LAZY_MATH_TYPESET);
+			sink.endElement();
+		}
+
+		sink.endElement();
+	}
+
+	/**
+	 * Starts the body of a html document, with the title and the author. The sections
+	 * follow, then the end of the body element.
+	 * @return  whether the title or author has math, always false unless math is lazy
+	 */
+	private boolean beginBody(HtmlSink sink, String hwTitle, String hwAuthor)
+			throws IOException {
+		sink.startElement("body");
+
+		// title
+		if (hwTitle != null) {
+			sink.startElement("h1");
+			sink.attribute(STRICT_CENTER);
+			sink.attribute(TITLE_ID);
+			sink.text(hwTitle);
+			sink.endElement();
+		}
+
+		// author
+		if (hwAuthor != null) {
+			sink.startElement("h3");
+			sink.attribute(STRICT_CENTER);
+			sink.attribute(AUTHOR_ID);
+			sink.text(hwAuthor);
+			sink.endElement();
+		}
+
+		return lazyMath &&
+				((hwTitle != null && MathDelimiters.containsMath(hwTitle)) ||
+				 (hwAuthor != null && MathDelimiters.containsMath(hwAuthor)));
+	}
+
+
+	/**
+	 * Writes the specified html document to the specified file, and to the compressed
+	 * file if compression is used.
+	 */
+	void writeOutput(HtmlDocument htmlDoc, Path output) throws IOException {
+		writeOutput(htmlDoc, output, null);
+	}
+
+	/**
+	 * Writes the specified html document as {@link #writeOutput(HtmlDocument, Path)} does.
+	 * @param serialized    run once the document is serialized into the output, before what
+	 *                      remains buffered is written and the output closed, null if none
+	 */
+	void writeOutput(HtmlDocument htmlDoc, Path output, Runnable serialized)
+			throws IOException {
+		writeOutput(out -> writeTo(htmlDoc, out), output, serialized);
+	}
+
+	/**
+	 * Writes the source of the specified html document in the format of this Converter.
+	 */
+	void writeTo(HtmlDocument htmlDoc, Appendable out) throws IOException {
+		if (format == HtmlWriter.Format.DEFAULT) {
+			htmlDoc.writeTo(out);
+			return;
+		}
+
+		final HtmlWriter sink = new HtmlWriter(out, format);
+		sink.doctype();
+		sink.startElement("html");
+		for (html.Content content : htmlDoc.getContents())
+			sink.content(content);
+		sink.endElement();
+	}
+
+	/**
+	 * Writes the html document of the specified HW document to the specified file, and
+	 * to the compressed file if compression is used. The html document is written as it
+	 * is rendered, see {@link #writeTo(HWDocument, Path, Appendable)}.
+	 */
+	void writeOutput(HWDocument hwDoc, Path output) throws IOException {
+		writeOutput(hwDoc, output, null);
+	}
+
+	/**
+	 * Writes the html document of the specified HW document as {@link
+	 * #writeOutput(HWDocument, Path)} does.
+	 * @param serialized    run once the document is rendered into the output, before what
+	 *                      remains buffered is written and the output closed, null if none
+	 */
+	void writeOutput(HWDocument hwDoc, Path output, Runnable serialized) throws IOException {
+		writeOutput(out -> writeTo(hwDoc, output, out), output, serialized);
+	}
+
+	/**
+	 * Writes the specified html source, already serialized and encoded in UTF-8 without
+	 * the final line separator, to the specified file, and to the compressed file if
+	 * compression is used.
+	 */
+	void writeOutput(byte[] html, Path output) throws IOException {
+		writeOutput(out -> out.write(html), output, null);
+	}
+
+	/**
+	 * A html document to be written, built or not, or already serialized.
+	 */
+	private interface Source {
+		void writeTo(Utf8Output out) throws IOException;
+	}
+
+	private void writeOutput(Source htmlDoc, Path output, Runnable serialized)
+			throws IOException {
+		if (compression == Compression.NONE) {
+			write(htmlDoc, output, serialized);
+			return;
+		}
+
+		final WriteEvent event = new WriteEvent();
+		event.begin();
+
+		// compressed while serialized, both files are written from the same buffers
+		final Path gzipOutput = gzipFile(output);
+		try (final FileChannel gzipChannel = FileChannel.open(gzipOutput,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE);
+		     final FileChannel channel = (compression == Compression.GZIP_ONLY) ?
+				     null :
+				     FileChannel.open(output,
+						     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+						     StandardOpenOption.WRITE);
+		     final ParallelGzip gzip =
+				     new ParallelGzip(gzipChannel, channel, Deflater.DEFAULT_COMPRESSION, gzipTotals);
+		     final Utf8Output out = new Utf8Output(gzip)) {
+			final SerializeEvent serializeEvent = new SerializeEvent();
+			serializeEvent.begin();
+
+			htmlDoc.writeTo(out);
+			out.append(System.lineSeparator());
+
+			serializeEvent.commit();
+			if (serialized != null) serialized.run();
+		}
+
+		event.end();
+		if (event.shouldCommit()) {
+			event.output = gzipOutput.toString();
+			event.bytesWritten = Files.size(gzipOutput);
+			event.commit();
+		}
+	}
+
+	/**
+	 * @return  the file the html document is written to, the compressed file if only the
+	 * compressed file is written
+	 */
+	Path outputFile(Path output) {
+		return (compression == Compression.GZIP_ONLY) ? gzipFile(output) : output;
+	}
+
+	private static Path gzipFile(Path output) {
+		return output.resolveSibling(output.getFileName() + ".gz");
+	}
+
+	/**
+	 * Writes the specified html document to the specified file.
+	 */
+	private static void write(Source htmlDoc, Path output, Runnable serialized)
+			throws IOException {
+		final WriteEvent event = new WriteEvent();
+		event.begin();
+
+		// encoded into pooled buffers instead of built as a single string
+		try (final FileChannel channel = FileChannel.open(output,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE);
+		     final Utf8Output out = new Utf8Output(channel)) {
+			final SerializeEvent serializeEvent = new SerializeEvent();
+			serializeEvent.begin();
+
+			htmlDoc.writeTo(out);
+			out.append(System.lineSeparator());
+
+			serializeEvent.commit();
+			if (serialized != null) serialized.run();
+		}
+
+		event.end();
+		if (event.shouldCommit()) {
+			event.output = output.toString();
+			event.bytesWritten = Files.size(output);
+			event.commit();
+		}
+	}
+
+	/**
+	 * Writes the specified html document to the specified writer, in the same form as it
+	 * is written to a file.
+	 */
+	void write(HtmlDocument htmlDoc, Writer writer) throws IOException {
+		final SerializeEvent event = new SerializeEvent();
+		event.begin();
+
+		writeTo(htmlDoc, writer);
+		writer.write(System.lineSeparator());
+
+		event.commit();
+	}
+
+
+	/**
+	 * Creates the head element of a html document to be written to the specified output.
+	 */
+	private Element newHead(Path output) {
+		// with lazy math, the engine and its config are at the end of the body instead
+		return (assets == null) ?
+				newHead(css, lazyMath ? null : engine, lazyMath ? null : script) :
+				newHead(assets, lazyMath ? null : assets.getScript(), lazyMath ? null : engine, output);
+	}
+
+	/**
+	 * Creates a new head element specifically for HWDocuments, with the specified css in
+	 * a style element. The engine is used as the value to the src attribute of a script
+	 * element in the head element.
+	 * @param css   the css source code to be included in the resulting html document
+	 * @param enginePath    the location of the engine
+	 * @param script  configuration for the engine
+	 */
+	private static Element newHead(
+			final String css,
+			final String enginePath,
+			final String script) {
+		final Element head = new Element("head");
+		Element charEncoding =
+				new EmptyElement(
+						"meta",
+						new Attribute("charset", "utf-8"));
+		head.appendContent(charEncoding);
+
+
+		// config engine or additional script
+		if (script != null && !script.isEmpty()) {
+			final Element config =
+					new Element("script", new Attribute("type", "text/x-mathjax-config"));
+			config.appendContent(script);
+
+			head.appendContent(config);
+		}
+
+		// setup engine
+		if (enginePath != null && !enginePath.isEmpty()) {
+			final Element engine =
+					new Element("script", new Attribute("src", enginePath));
+
+			head.appendContent(engine);
+		}
+
+		// setup CSS
+		if (css != null && !css.isEmpty()) {
+			final Element style = new Element("style");
+			style.appendContent(css);
+
+			head.appendContent(style);
+		}
+
+		return head;
+	}
+
+	/**
+	 * Creates a new head element specifically for HWDocuments, with the css and script
+	 * linked as separate files instead of inlined.
+	 * @param assets    the css
+	 * @param script    the script of the assets, may be null
+	 * @param enginePath    the location of the engine
+	 * @param output    where the html document is to be written, the assets are linked
+	 *                  relative to it
+	 */
+	private static Element newHead(
+			final Assets assets,
+			final Path script,
+			final String enginePath,
+			final Path output) {
+		final Element head = new Element("head");
+		Element charEncoding =
+				new EmptyElement(
+						"meta",
+						new Attribute("charset", "utf-8"));
+		head.appendContent(charEncoding);
+
+
+		// config engine, must precede the engine
+		if (script != null) {
+			final Element config =
+					new Element("script",
+							new Attribute("src", Assets.href(script, output)));
+
+			head.appendContent(config);
+		}
+
+		// setup engine
+		if (enginePath != null && !enginePath.isEmpty()) {
+			final Element engine =
+					new Element("script", new Attribute("src", enginePath));
+
+			head.appendContent(engine);
+		}
+
+		// setup CSS
+		for (Path stylesheet : assets.getStylesheets()) {
+			final Element link =
+					new EmptyElement("link",
+							new Attribute("rel", "stylesheet"),
+							new Attribute("href", Assets.href(stylesheet, output)));
+
+			head.appendContent(link);
+		}
+
+		return head;
+	}
+}
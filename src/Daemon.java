@@ -0,0 +1,162 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A resident conversion server listening on a unix domain socket. Configuration and css
+ * are loaded once, and the parser and serializer stay compiled between conversions, so
+ * a warm conversion avoids the cost of starting a new JVM.
+ *
+ * <p>
+ * A client connects, writes the command line arguments of a single conversion, each
+ * terminated by a NUL character, then shuts down its output. Paths must be absolute.
+ * The daemon replies with a line, "OK", "ERROR &lt;message&gt;", or "UNSUPPORTED" if the
+ * arguments are not a single conversion with only the options in {@link #OPTIONS}, in
+ * which case the client should convert by itself. "OK" is followed by the lines the
+ * client prints to its standard output, the statistics of the rendered sections cache
+ * and of the compression if used.
+ */
+final class Daemon {
+	private static final String OK = "OK", ERROR = "ERROR", UNSUPPORTED = "UNSUPPORTED";
+
+	// options changing the output, and --cache and --gzip reported in the response, others
+	// such as --watch, --stats or --incremental act in or report to the client process
+	private static final Set<String> OPTIONS = Set.of(
+			"--clean", "--lazy-math", "--mmap", "--stream", "--minify", "--pretty", "--css",
+			"--compact-tables", "--cache", "--assets", "--gzip");
+
+	private final Path socket;
+
+	Daemon(Path socket) {
+		this.socket = socket;
+	}
+
+
+	/**
+	 * Listens for conversions until the process is terminated. Each connection is served
+	 * on its own thread.
+	 * @throws IOException  if the socket cannot be bound, or another daemon is already
+	 * listening on it
+	 */
+	void serve() throws IOException {
+		if (isListening(socket))
+			throw new IOException("Daemon already running");
+		// left behind by a daemon that did not exit normally
+		Files.deleteIfExists(socket);
+
+		final ExecutorService workers = Executors.newCachedThreadPool(runnable -> {
+			final Thread thread = new Thread(runnable);
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		try (final ServerSocketChannel server =
+				     ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+			server.bind(UnixDomainSocketAddress.of(socket));
+			socket.toFile().deleteOnExit();
+
+			System.out.println("Listening on " + socket);
+
+			while (true) {
+				final SocketChannel client = server.accept();
+				workers.execute(() -> handle(client));
+			}
+		}
+	}
+
+
+	private static void handle(final SocketChannel client) {
+		try (client) {
+			final String response = convert(readArgs(client));
+			client.write(StandardCharsets.UTF_8.encode(response + '\n'));
+		}
+		catch (IOException e) {
+			System.err.println("Failed to serve client");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Runs the conversion specified by the arguments.
+	 * @return  the response to the client
+	 */
+	private static String convert(final List<String> args) {
+		final Map<String, String> options = new HashMap<>();
+		final List<String> positional = HWtoHTML.parseArgs(args.toArray(new String[0]), options);
+
+		if (positional.size() < 2 || positional.size() > 3 ||
+				!OPTIONS.containsAll(options.keySet()) ||
+				// the standard streams of the client are not forwarded
+				positional.contains(HWtoHTML.STANDARD_STREAM))
+			return UNSUPPORTED;
+
+		final Path input = Paths.get(positional.get(0));
+		final Path output = Paths.get(positional.get(1));
+		final String cssFile =
+				(positional.size() >= 3) ? positional.get(2) : options.get("--css");
+
+		try {
+			final Converter converter = HWtoHTML.newConverter(options, cssFile);
+			converter.convert(input, output);
+
+			final ByteArrayOutputStream report = new ByteArrayOutputStream();
+			try (final PrintStream out = new PrintStream(report, true, StandardCharsets.UTF_8)) {
+				HWtoHTML.printStatistics(converter, out);
+			}
+			final String statistics = report.toString(StandardCharsets.UTF_8).strip();
+			return statistics.isEmpty() ? OK : OK + '\n' + statistics;
+		}
+		catch (Exception e) {
+			// single line response
+			return ERROR + ' ' + String.valueOf(e).replace('\n', ' ');
+		}
+	}
+
+	/**
+	 * Reads NUL terminated arguments until the end of the stream.
+	 */
+	private static List<String> readArgs(final SocketChannel client) throws IOException {
+		final ByteArrayOutputStream request = new ByteArrayOutputStream();
+		final ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+		while (client.read(buffer) != -1) {
+			request.write(buffer.array(), 0, buffer.position());
+			buffer.clear();
+		}
+
+		final String args = request.toString(StandardCharsets.UTF_8);
+		if (args.isEmpty()) return List.of();
+
+		// trailing terminator would give an extra empty argument
+		return Arrays.asList(args.substring(0, args.length() - 1).split("\0", -1));
+	}
+
+	/**
+	 * Tests if a daemon accepts connections on the specified socket.
+	 */
+	private static boolean isListening(final Path socket) {
+		try (final SocketChannel channel =
+				     SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+			return channel.isConnected();
+		}
+		catch (IOException e) {
+			return false;
+		}
+	}
+}
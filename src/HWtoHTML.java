@@ -1,12 +1,17 @@
 import hw.*;
 import html.*;
 
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Collections;
-import java.util.Properties;
+import java.util.*;
 import java.util.stream.Stream;
 
 /**
@@ -15,6 +20,14 @@ import java.util.stream.Stream;
 public class HWtoHTML {
 	private static final String VERSION = "3.1";
 
+	// name of standard input or output in place of a file
+	static final String STANDARD_STREAM = "-";
+	// rows of each tbody of compact tables, see --compact-tables
+	private static final int DEFAULT_TABLE_CHUNK_ROWS = 256;
+	// options not changing the output, left out of the fingerprint of --incremental
+	private static final Set<String> NEUTRAL_OPTIONS = Set.of(
+			"--batch", "--threads", "--stats", "--incremental", "--mmap", "--stream", "--cache");
+
 
 	private static class PropertiesUtils {
 		/**
@@ -64,6 +77,9 @@ public class HWtoHTML {
 
 
 
+	// start of the static initialization, the config phase reported by --stats
+	private static final long INIT_START = System.nanoTime();
+
 	// hardcoded in the JAR, used as backup
 	private static final Properties DEFAULTS;
 	static {
@@ -74,7 +90,7 @@ public class HWtoHTML {
 
 	// placed in same directory alongside JAR, user configurable
 	private static final String CONFIG_FILE = "config.properties";
-	private static final Properties CONFIG =
+	private static Properties CONFIG =
 			PropertiesUtils.loadProperties(CONFIG_FILE, DEFAULTS);
 
 
@@ -83,6 +99,28 @@ public class HWtoHTML {
 	private static String SCRIPT =
 			readFile(PropertiesUtils.nullSafeGet(CONFIG, "script"));
 
+	/**
+	 * Reads the config file, base css and script again. Used when watching for changes.
+	 */
+	static void reloadConfig() {
+		CONFIG = PropertiesUtils.loadProperties(CONFIG_FILE, DEFAULTS);
+		BASE_CSS = readFile(PropertiesUtils.nullSafeGet(CONFIG, "base-css"));
+		SCRIPT = readFile(PropertiesUtils.nullSafeGet(CONFIG, "script"));
+	}
+
+	/**
+	 * @return  the config file and the files it refers to, the base css and script
+	 */
+	static List<Path> configFiles() {
+		final List<Path> files = new ArrayList<>();
+		files.add(Paths.get(CONFIG_FILE));
+		for (String key : List.of("base-css", "script")) {
+			final String path = PropertiesUtils.nullSafeGet(CONFIG, key);
+			if (path != null) files.add(Paths.get(path));
+		}
+		return files;
+	}
+
 	/**
 	 * Reads all lines from the specified file, returns the content of the file as a
 	 * single string, preserving line breaks as newlines.
@@ -122,178 +160,488 @@ public class HWtoHTML {
 				return;
 			}
 		}
-		if (args.length < 2 || (args[0].equals("--clean") && args.length < 3)) {
+
+		final Map<String, String> options = new HashMap<>();
+		final List<String> positional = parseArgs(args, options);
+
+		if (options.containsKey("--daemon")) {
+			final String socket =
+					positional.isEmpty() ?
+							PropertiesUtils.nullSafeGet(CONFIG, "socket") :
+							positional.get(0);
+			try {
+				new Daemon(Paths.get(socket)).serve();
+			}
+			catch (IOException e) {
+				System.err.println("Daemon failed: " + socket);
+				e.printStackTrace();
+				System.exit(1);
+			}
+			return;
+		}
+
+		if (positional.size() < 2) {
 			System.out.println("Version: " + VERSION);
 			System.out.println("Usage:");
-			System.out.println("HWtoHTML <input> <output> [css]");
-			System.out.println("HWtoHTML --clean <input> <output> [css]");
+			System.out.println("HWtoHTML [options] <input> <output> [css]");
+			System.out.println("    '-' as input or output is standard input or output");
+			System.out.println("HWtoHTML --batch [options] <output dir> <input>...");
+			System.out.println("HWtoHTML --watch [options] <input> <output> [css]");
+			System.out.println("HWtoHTML --daemon [socket]");
 			System.out.println("HWtoHTML --print-config");
 			System.out.println("HWtoHTML --print-css");
+			System.out.println("Options:");
+			System.out.println("--clean         do not include the base css");
+			System.out.println("--lazy-math     load the engine only with math, typeset sections as they are scrolled to");
+			System.out.println("--mmap          map input files into memory, for very large inputs");
+			System.out.println("--stream        convert a section at a time, memory bounded by the largest section");
+			System.out.println("--minify        write the html without whitespace between tags and optional end tags");
+			System.out.println("--pretty        write the html indented, for reading");
+			System.out.println("--css=<file>    css appended to the base css");
+			System.out.println("--compact-tables[=<rows>]  align table columns by class, split the body into chunks of rows");
+			System.out.println("--cache=<dir>   cache rendered sections in the directory");
+			System.out.println("--assets=<dir>  link css and script as shared files in the directory");
+			System.out.println("--stats[=json]  report time and allocation of each phase of a conversion");
+			System.out.println("--gzip[=only]   also write a compressed <output>.gz, or only that");
+			System.out.println("--incremental[=<manifest>]  skip outputs whose input, css, config and options are unchanged");
+			System.out.println("Batch options, an input is a directory, a glob or @manifest:");
+			System.out.println("--threads=<n>   number of parallel conversions");
 			return;
 		}
 
 
-		// css
-		final boolean noDefaultCSS = args[0].equals("--clean");
-		final String baseCSS = noDefaultCSS ? null : BASE_CSS;
-
-		// engine, used to format math stuff
-		final String engine = PropertiesUtils.nullSafeGet(CONFIG, "engine");
+		if (options.containsKey("--batch")) {
+			final Converter converter = newConverter(options, options.get("--css"));
 
+			final int threads =
+					options.containsKey("--threads") ?
+							Integer.parseInt(options.get("--threads")) :
+							Runtime.getRuntime().availableProcessors();
 
-		// setup variables from args array
-		final String input, output, cssFile;
-		if (noDefaultCSS) {
-			input = args[1];
-			output = args[2];
-
-			if (args.length >= 4)
-				cssFile = args[3];
-			else cssFile = null;
+			try {
+				final Path outputDir = Paths.get(positional.get(0));
+				final Manifest manifest =
+						options.containsKey("--incremental") ?
+								newManifest(options, options.get("--css"), outputDir) :
+								null;
+				final Batch batch = new Batch(converter, outputDir, threads, manifest);
+				final int failed = batch.run(positional.subList(1, positional.size()));
+				if (manifest != null) System.out.println(manifest.report());
+				printStatistics(converter);
+				if (failed > 0)
+					System.exit(1);
+			}
+			catch (IOException e) {
+				System.err.println("Failed to collect inputs");
+				e.printStackTrace();
+				System.exit(1);
+			}
+			return;
 		}
-		else {
-			input = args[0];
-			output = args[1];
 
-			if (args.length >= 3)
-				cssFile = args[2];
-			else cssFile = null;
-		}
 
+		// setup variables from args array
+		final String input = positional.get(0);
+		final String output = positional.get(1);
+		final String cssFile =
+				(positional.size() >= 3) ? positional.get(2) : options.get("--css");
 
-		// read HW doc
-		HWDocument hwDoc = null;
-		try {
-			hwDoc = HWDocument.parse(Paths.get(input));
-		}
-		catch (IOException e) {
-			System.err.println("Failed to read file: " + input);
-			e.printStackTrace();
+		if (options.containsKey("--watch")) {
+			try {
+				new Watcher(Paths.get(input), Paths.get(output), cssFile, options).watch();
+			}
+			catch (IOException e) {
+				System.err.println("Failed to watch file: " + input);
+				e.printStackTrace();
+				System.exit(1);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return;
 		}
 
-		if (hwDoc == null) throw new IllegalStateException();
+		final Converter converter = newConverter(options, cssFile);
 
+		// piped, converted a section at a time as it is read
+		if (STANDARD_STREAM.equals(input) || STANDARD_STREAM.equals(output)) {
+			// anything else on standard output would be mixed with the document
+			final PrintStream report = STANDARD_STREAM.equals(output) ? System.err : System.out;
+			if (report == System.err && converter.getGzipTotals() != null) {
+				System.err.println("--gzip needs an output file");
+				System.exit(1);
+			}
 
+			if (options.containsKey("--incremental"))
+				System.err.println("--incremental is not used with standard input or output");
 
-		// translate to HTML
-		// read css, prepare html file
-		HtmlDocument htmlDoc;
-		if (cssFile == null)    // no custom CSS
-			htmlDoc = newHTMLDocForHW(baseCSS, engine, SCRIPT);
-		else {  // custom CSS
+			final Stats stats = options.containsKey("--stats") ? new Stats(INIT_START) : null;
+			if (stats != null) stats.endPhase("config");
 			try {
-				final String appendedCSS = baseCSS + '\n' + String.join("\n", Files.readAllLines(Paths.get(cssFile)));
-				htmlDoc = newHTMLDocForHW(appendedCSS, engine, SCRIPT);
+				pipe(converter, input, output);
 			}
 			catch (IOException e) {
-				System.err.printf("Failed to read file '%s'%n", cssFile);
-				htmlDoc = newHTMLDocForHW(baseCSS, engine, SCRIPT);
+				System.err.printf("Failed to convert '%s' to '%s'%n", input, output);
+				e.printStackTrace();
+				System.exit(1);
 			}
-		}
 
+			if (stats != null) {
+				stats.endPhase("stream");
+				printStats(options, stats, report);
+			}
+			printStatistics(converter, report);
+			return;
+		}
 
-		final Element body = new Element("body");
+		final Stats stats = options.containsKey("--stats") ? new Stats(INIT_START) : null;
+		if (stats != null) stats.endPhase("config");
 
-		{
-			// title
-			if (hwDoc.getTitle() != null) {
-				final Element title =
-						new Element("h1",
-								new Attribute("class", "strictCenter"),
-								new Attribute("id", "title"));
-				title.appendContent(hwDoc.getTitle());
-				body.appendContent(title);
+		// converted only if anything it depends on changed
+		if (options.containsKey("--incremental")) {
+			final Path outputPath = Paths.get(output);
+			final Path written = converter.outputFile(outputPath);
+			try {
+				final Manifest manifest = newManifest(
+						options, cssFile, written.toAbsolutePath().getParent());
+				final boolean upToDate = manifest.isUpToDate(Paths.get(input), written);
+				if (stats != null) stats.endPhase("check");
+
+				if (!upToDate) {
+					if (stats != null)
+						convert(converter, Paths.get(input), outputPath, stats);
+					else
+						converter.convert(Paths.get(input), outputPath);
+					manifest.converted(written);
+				}
+				manifest.save();
+				System.out.println(manifest.report());
 			}
+			catch (IOException e) {
+				System.err.printf("Failed to convert '%s' to '%s'%n", input, output);
+				e.printStackTrace();
+				System.exit(1);
+			}
+
+			if (stats != null) printStats(options, stats, System.out);
+			printStatistics(converter);
+			return;
 		}
 
-		{
-			// author
-			if (hwDoc.getAuthor() != null) {
-				final Element author =
-						new Element("h3",
-								new Attribute("class", "strictCenter"),
-								new Attribute("id", "author"));
-				author.appendContent(hwDoc.getAuthor());
-				body.appendContent(author);
+		if (stats != null) {
+			try {
+				convert(converter, Paths.get(input), Paths.get(output), stats);
+			}
+			catch (IOException e) {
+				System.err.printf("Failed to convert '%s' to '%s'%n", input, output);
+				e.printStackTrace();
 			}
+
+			printStats(options, stats, System.out);
+			printStatistics(converter);
+			return;
 		}
 
-		{
-			// contents, typically questions and solutions
-			int i = 0;  // index sections to make them easier to refer to in CSS
+		// reading and writing are interleaved
+		if (converter.isStreaming()) {
+			try {
+				converter.convert(Paths.get(input), Paths.get(output));
+			}
+			catch (IOException e) {
+				System.err.printf("Failed to convert '%s' to '%s'%n", input, output);
+				e.printStackTrace();
+			}
+
+			printStatistics(converter);
+			return;
+		}
 
-			for (hw.Section section : hwDoc.getSections()) {
-				final Element sectionElement = section.toHtmlContent();
-				sectionElement.addAttribute(new Attribute("class", "section"));
-				sectionElement.addAttribute(new Attribute("id", "section" + (i++)));
 
-				body.appendContent(sectionElement);
-			}
+		// read HW doc, and translate to HTML if cached sections are used
+		final trace.ConversionEvent event = Converter.beginConversion();
+		HWDocument hwDoc = null;
+		HtmlDocument htmlDoc = null;
+		try {
+			if (converter.getCache() == null)
+				hwDoc = converter.read(Paths.get(input));
+			else
+				htmlDoc = converter.toHtml(Paths.get(input), Paths.get(output));
+		}
+		catch (IOException e) {
+			System.err.println("Failed to read file: " + input);
+			e.printStackTrace();
 		}
 
-		htmlDoc.appendContent(body);
+		if (hwDoc == null && htmlDoc == null) throw new IllegalStateException();
 
 
-		// write HTML doc
+		// write HTML doc, rendered as it is written unless translated already
 		try {
-			Files.write(Paths.get(output), Collections.singletonList(htmlDoc.toString()));
+			if (hwDoc != null)
+				converter.writeOutput(hwDoc, Paths.get(output));
+			else
+				converter.writeOutput(htmlDoc, Paths.get(output));
+			Converter.endConversion(event, Paths.get(input), converter.outputFile(Paths.get(output)));
 		}
 		catch (IOException e) {
 			System.err.println("Failed to write file: " + output);
 			e.printStackTrace();
 		}
+
+		printStatistics(converter);
+	}
+
+	/**
+	 * Converts the specified input the same as the default conversion, phase by phase,
+	 * recording each phase in the specified Stats. The document is serialized into the
+	 * output as it is rendered, so that phase also includes the writes of the buffers it
+	 * fills, the write phase is what remains buffered and the close of the output, and
+	 * with compression, the end of compressing. Without a cache, rendering is part of
+	 * serialization, as in the default conversion. Streaming conversions read, parse,
+	 * render and serialize in a single phase.
+	 */
+	private static void convert(
+			final Converter converter,
+			final Path input,
+			final Path output,
+			final Stats stats) throws IOException {
+		if (converter.isStreaming()) {
+			converter.convert(input, output, () -> stats.endPhase("stream"));
+			stats.endPhase("write");
+			stats.setOutputBytes(Files.size(converter.outputFile(output)));
+			return;
+		}
+
+		final trace.ConversionEvent event = Converter.beginConversion();
+		final Runnable serialized = () -> stats.endPhase("serialize");
+
+		// read HW doc, and translate to HTML if cached sections are used
+		if (converter.getCache() == null) {
+			final HWDocument hwDoc = converter.read(input);
+			stats.endPhase("parse");
+			stats.count(hwDoc);
+
+			converter.writeOutput(hwDoc, output, serialized);
+		}
+		// cached sections are neither parsed nor rendered, and cannot be counted
+		else {
+			final HtmlDocument htmlDoc = converter.toHtml(input, output);
+			stats.endPhase("parse+build");
+
+			converter.writeOutput(htmlDoc, output, serialized);
+		}
+		stats.endPhase("write");
+
+		Converter.endConversion(event, input, converter.outputFile(output));
+		stats.setOutputBytes(Files.size(converter.outputFile(output)));
+	}
+
+	/**
+	 * Converts from standard input, to standard output, or both, named {@value
+	 * #STANDARD_STREAM}. Standard output is written through a channel, in large buffers
+	 * written as each read of the input is rendered. The standard streams are not closed.
+	 */
+	private static void pipe(
+			final Converter converter,
+			final String input,
+			final String output) throws IOException {
+		final Path outputPath = Paths.get(output);
+		try (final FileChannel in = STANDARD_STREAM.equals(input) ?
+				new FileInputStream(FileDescriptor.in).getChannel() :
+				FileChannel.open(Paths.get(input))) {
+			if (STANDARD_STREAM.equals(output))
+				// shared assets are linked relative to the working directory
+				converter.convert(in, new FileOutputStream(FileDescriptor.out).getChannel(), outputPath);
+			else
+				converter.convert(in, outputPath);
+		}
+	}
+
+	/**
+	 * Prints the phases of a conversion, as text or json as given by --stats.
+	 */
+	private static void printStats(
+			final Map<String, String> options,
+			final Stats stats,
+			final PrintStream out) {
+		out.print("json".equals(options.get("--stats")) ?
+				stats.toJson() + System.lineSeparator() :
+				stats.toText());
+	}
+
+	/**
+	 * Prints the hits and misses of the rendered sections cache and the compression
+	 * totals, if used.
+	 */
+	static void printStatistics(final Converter converter) {
+		printStatistics(converter, System.out);
+	}
+
+	/**
+	 * Prints the statistics of the specified Converter to the specified stream, see
+	 * {@link #printStatistics(Converter)}.
+	 */
+	static void printStatistics(final Converter converter, final PrintStream out) {
+		final SectionCache cache = converter.getCache();
+		if (cache != null)
+			out.printf("Section cache: %d hits, %d misses%n",
+					cache.getHits(), cache.getMisses());
+
+		final ParallelGzip.Totals gzipTotals = converter.getGzipTotals();
+		if (gzipTotals != null)
+			out.println(gzipTotals);
 	}
 
 
 	/**
-	 * Creates a new HtmlDocument specifically for HWDocuments. The returned HtmlDocument
-	 * contains a head element with the specified css in a style element. The engine is
-	 * used as the value to the src attribute of a script element in the head element.
-	 * @param css   the css source code to be included in the resulting html document
-	 * @param enginePath    the location of the engine
-	 * @param script  configuration for the engine
+	 * Separates the options from the positional arguments. Options precede the positional
+	 * arguments and are either --name or --name=value.
+	 * @param args  the command line arguments
+	 * @param options   receives the options, mapped to null if no value is given
+	 * @return  the positional arguments
 	 */
-	private static HtmlDocument newHTMLDocForHW(
-			final String css,
-			final String enginePath,
-			final String script) {
-		final HtmlDocument doc = new HtmlDocument();
-
-		Element head = new Element("head");
-		Element charEncoding =
-				new EmptyElement(
-						"meta",
-						new Attribute("charset", "utf-8"));
-		head.appendContent(charEncoding);
-
-
-		// config engine or additional script
-		if (script != null && !script.isEmpty()) {
-			final Element config =
-					new Element("script", new Attribute("type", "text/x-mathjax-config"));
-			config.appendContent(script);
-
-			head.appendContent(config);
+	static List<String> parseArgs(final String[] args, final Map<String, String> options) {
+		int firstArg = 0;
+		while (firstArg < args.length && args[firstArg].startsWith("--")) {
+			final String option = args[firstArg++];
+			final int separator = option.indexOf('=');
+			if (separator < 0)
+				options.put(option, null);
+			else
+				options.put(option.substring(0, separator), option.substring(separator + 1));
 		}
+		return Arrays.asList(args).subList(firstArg, args.length);
+	}
 
-		// setup engine
-		if (enginePath != null && !enginePath.isEmpty()) {
-			final Element engine =
-					new Element("script", new Attribute("src", enginePath));
+	/**
+	 * Creates a Converter with the configuration and the specified options.
+	 * @param cssFile   path to css appended to the base css, may be null
+	 */
+	static Converter newConverter(final Map<String, String> options, final String cssFile) {
+		// css
+		final boolean noDefaultCSS = options.containsKey("--clean");
+		final String baseCSS = noDefaultCSS ? null : BASE_CSS;
 
-			head.appendContent(engine);
+		// engine, used to format math stuff
+		final String engine = PropertiesUtils.nullSafeGet(CONFIG, "engine");
+		final boolean lazyMath = options.containsKey("--lazy-math");
+
+		final boolean mapInput = options.containsKey("--mmap");
+		final boolean stream = options.containsKey("--stream");
+
+		// tables with a thead and tbody chunks, aligned by the classes of the chunks
+		final int tableChunkRows =
+				!options.containsKey("--compact-tables") ? 0 :
+				(options.get("--compact-tables") == null) ? DEFAULT_TABLE_CHUNK_ROWS :
+				Integer.parseInt(options.get("--compact-tables"));
+
+		// layout of the html source
+		if (options.containsKey("--minify") && options.containsKey("--pretty"))
+			throw new IllegalArgumentException("--minify and --pretty cannot be used together");
+		final HtmlWriter.Format format =
+				options.containsKey("--minify") ? HtmlWriter.Format.MINIFIED :
+				options.containsKey("--pretty") ? HtmlWriter.Format.PRETTY :
+				HtmlWriter.Format.DEFAULT;
+
+		// rendered sections cache
+		// cached sections are text to the document, and could not be indented by depth
+		SectionCache cache = null;
+		if (options.get("--cache") != null && format == HtmlWriter.Format.PRETTY)
+			System.err.println("--cache is not used with --pretty");
+		else if (options.get("--cache") != null) {
+			final long maxSize =
+					Long.parseLong(PropertiesUtils.nullSafeGet(CONFIG, "cache-size")) << 20;
+			try {
+				cache = new SectionCache(Paths.get(options.get("--cache")), maxSize, tableChunkRows, format);
+			}
+			catch (IOException e) {
+				System.err.printf("Failed to open cache '%s'%n", options.get("--cache"));
+				e.printStackTrace();
+			}
 		}
 
-		// setup CSS
-		if (css != null && !css.isEmpty()) {
-			final Element style = new Element("style");
-			style.appendContent(css);
+		// css and script as separate files, the rules of compact tables are custom css
+		String customCSS = readCSS(cssFile);
+		if (tableChunkRows > 0) {
+			final String tableCSS = Table.compactCSS(tableChunkRows);
+			customCSS = (customCSS == null) ? tableCSS : customCSS + '\n' + tableCSS;
+		}
+		Assets assets = null;
+		if (options.get("--assets") != null) {
+			try {
+				assets = Assets.write(Paths.get(options.get("--assets")), baseCSS, customCSS, SCRIPT);
+			}
+			catch (IOException e) {
+				System.err.printf("Failed to write assets to '%s'%n", options.get("--assets"));
+				e.printStackTrace();
+			}
+		}
+
+		// custom CSS is appended
+		final String css =
+				(customCSS == null) ? baseCSS :
+				(baseCSS == null) ? customCSS :
+				baseCSS + '\n' + customCSS;
+
+		// --gzip writes the compressed file next to the html file, --gzip=only instead
+		final Converter.Compression compression =
+				!options.containsKey("--gzip") ? Converter.Compression.NONE :
+				"only".equals(options.get("--gzip")) ? Converter.Compression.GZIP_ONLY :
+				Converter.Compression.GZIP;
 
-			head.appendContent(style);
+		return new Converter(css, engine, SCRIPT, lazyMath, mapInput, stream, tableChunkRows,
+				format, cache, assets, compression);
+	}
+
+	/**
+	 * Opens the manifest of --incremental, the given file or {@value Manifest#FILE_NAME}
+	 * in the specified directory. Outputs depend on the config file, the base css unless
+	 * --clean, the script, the specified css file, and a fingerprint of the version and
+	 * the options changing the output.
+	 * @param cssFile   path to css appended to the base css, may be null
+	 */
+	private static Manifest newManifest(
+			final Map<String, String> options,
+			final String cssFile,
+			final Path dir) throws IOException {
+		final Path file =
+				(options.get("--incremental") != null) ?
+						Paths.get(options.get("--incremental")) :
+						dir.resolve(Manifest.FILE_NAME);
+
+		final List<Path> shared = new ArrayList<>();
+		shared.add(Paths.get(CONFIG_FILE));
+		final String baseCSS = PropertiesUtils.nullSafeGet(CONFIG, "base-css");
+		if (baseCSS != null && !options.containsKey("--clean")) shared.add(Paths.get(baseCSS));
+		final String script = PropertiesUtils.nullSafeGet(CONFIG, "script");
+		if (script != null) shared.add(Paths.get(script));
+		if (cssFile != null) shared.add(Paths.get(cssFile));
+
+		final StringBuilder fingerprint = new StringBuilder(VERSION);
+		for (String option : new TreeSet<>(options.keySet())) {
+			if (NEUTRAL_OPTIONS.contains(option)) continue;
+			fingerprint.append(' ').append(option);
+			if (options.get(option) != null) fingerprint.append('=').append(options.get(option));
 		}
 
-		doc.appendContent(head);
+		return new Manifest(file, fingerprint.toString(), shared);
+	}
 
-		return doc;
+	/**
+	 * Reads the specified css file.
+	 * @param cssFile   path to the additional css, may be null
+	 * @return  the content, lines joined by newlines without a trailing newline, null if
+	 * no file is specified or the file failed to read
+	 */
+	private static String readCSS(final String cssFile) {
+		if (cssFile == null) return null;    // no custom CSS
+
+		try {
+			return String.join("\n", Files.readAllLines(Paths.get(cssFile)));
+		}
+		catch (IOException e) {
+			System.err.printf("Failed to read file '%s'%n", cssFile);
+			return null;
+		}
 	}
 }
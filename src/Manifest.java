@@ -0,0 +1,314 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records what each output was converted from, so a conversion is skipped when nothing
+ * it depends on changed: the input, the files shared by all conversions such as the
+ * config, base css, script and extra css, and a fingerprint of the tool version and the
+ * options. A file is unchanged if its last modified time and size are as recorded, or
+ * otherwise if its hash is.
+ *
+ * <p>
+ * The manifest is a text file,
+ * <pre>
+ * hwhtml-manifest 1
+ * &lt;output&gt;	&lt;fingerprint&gt;
+ * 	&lt;file&gt;	&lt;last modified&gt;	&lt;size&gt;	&lt;sha-256&gt;
+ * </pre>
+ * with a line for each output, followed by a line for each file it depends on, fields
+ * separated by tabs. Several processes may update the same manifest at the same time:
+ * the manifest is read again and updated under a lock, written to a temporary file and
+ * moved into place atomically, so readers only ever see a complete manifest.
+ */
+final class Manifest {
+	static final String FILE_NAME = ".hwhtml-manifest";
+
+	private static final String HEADER = "hwhtml-manifest 1";
+	private static final String LOCK_SUFFIX = ".lock";
+	private static final String ABSENT = "-";
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+
+	/** The state of a file an output depends on. */
+	private static final class Dependency {
+		private final Path path;
+		// all ABSENT if the file does not exist
+		private final String modified, size, hash;
+
+		private Dependency(Path path, String modified, String size, String hash) {
+			this.path = path;
+			this.modified = modified;
+			this.size = size;
+			this.hash = hash;
+		}
+
+		/**
+		 * @return  whether the last modified time and size are the same, without hashing
+		 */
+		private boolean sameStat(Dependency other) {
+			return path.equals(other.path) &&
+					modified.equals(other.modified) && size.equals(other.size);
+		}
+	}
+
+	/** What an output was converted from. */
+	private static final class Entry {
+		private final String fingerprint;
+		private final List<Dependency> dependencies;
+
+		private Entry(String fingerprint, List<Dependency> dependencies) {
+			this.fingerprint = fingerprint;
+			this.dependencies = dependencies;
+		}
+	}
+
+
+	private final Path file;
+	private final String fingerprint;
+	private final List<Path> shared;
+
+	// as read when opened, keyed by output
+	private final Map<Path, Entry> recorded;
+	// the current state of outputs being converted, and of outputs to be saved
+	private final Map<Path, Entry> pending = new ConcurrentHashMap<>();
+	private final Map<Path, Entry> updates = new ConcurrentHashMap<>();
+	// the shared files are checked once for all outputs
+	private List<Dependency> sharedState;
+
+	private final AtomicInteger skipped = new AtomicInteger(), rebuilt = new AtomicInteger();
+
+
+	/**
+	 * @param file  the manifest, read if it exists
+	 * @param fingerprint   the tool version and the options affecting the outputs
+	 * @param shared    the files all outputs depend on, which may not exist
+	 */
+	Manifest(Path file, String fingerprint, List<Path> shared) throws IOException {
+		this.file = file.toAbsolutePath().normalize();
+		this.fingerprint = fingerprint;
+		this.shared = new ArrayList<>();
+		for (Path path : shared) this.shared.add(path.toAbsolutePath().normalize());
+		this.recorded = read(this.file);
+	}
+
+	int getSkipped() { return skipped.get(); }
+	int getRebuilt() { return rebuilt.get(); }
+
+
+	/**
+	 * Tests if the specified output was converted from the specified input as it is
+	 * now, with the same shared files and fingerprint. Otherwise the output is to be
+	 * converted, and {@link #converted(Path)} called once it is.
+	 * @param output    the file written by the conversion
+	 */
+	boolean isUpToDate(Path input, Path output) throws IOException {
+		final Path key = output.toAbsolutePath().normalize();
+		final Entry previous = recorded.get(key);
+
+		final List<Dependency> dependencies = new ArrayList<>();
+		dependencies.add(check(input.toAbsolutePath().normalize(), previous));
+		dependencies.addAll(sharedState(previous));
+		final Entry current = new Entry(fingerprint, dependencies);
+
+		if (previous == null || !previous.fingerprint.equals(fingerprint) ||
+				    !Files.exists(output) || !sameHashes(previous, current)) {
+			pending.put(key, current);
+			return false;
+		}
+
+		// touched but unchanged, recorded again to be checked without hashing next time
+		if (!sameStats(previous, current)) updates.put(key, current);
+		skipped.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Records that the specified output was converted, from its dependencies as they
+	 * were when checked by {@link #isUpToDate(Path, Path)}.
+	 */
+	void converted(Path output) {
+		final Entry current = pending.remove(output.toAbsolutePath().normalize());
+		if (current != null) updates.put(output.toAbsolutePath().normalize(), current);
+		rebuilt.incrementAndGet();
+	}
+
+	/**
+	 * Writes the recorded outputs to the manifest, merged with the outputs recorded by
+	 * other processes meanwhile.
+	 */
+	void save() throws IOException {
+		if (updates.isEmpty()) return;
+
+		final Path dir = file.getParent();
+		Files.createDirectories(dir);
+		try (final FileChannel lockChannel = FileChannel.open(
+				dir.resolve(file.getFileName() + LOCK_SUFFIX),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			final FileLock lock = lockChannel.lock();
+			try {
+				write();
+			}
+			finally {
+				lock.release();
+			}
+		}
+		updates.clear();
+	}
+
+	/**
+	 * Writes the manifest read again with the updates, under the lock.
+	 */
+	private void write() throws IOException {
+		final Path dir = file.getParent();
+		final Map<Path, Entry> entries = read(file);
+		entries.putAll(updates);
+
+		final StringBuilder text = new StringBuilder(HEADER).append('\n');
+		for (Map.Entry<Path, Entry> entry : entries.entrySet()) {
+			text.append(entry.getKey()).append('\t')
+					.append(entry.getValue().fingerprint).append('\n');
+			for (Dependency dependency : entry.getValue().dependencies) {
+				text.append('\t').append(dependency.path)
+						.append('\t').append(dependency.modified)
+						.append('\t').append(dependency.size)
+						.append('\t').append(dependency.hash).append('\n');
+			}
+		}
+
+		// readers only ever see a complete manifest
+		final Path temp = Files.createTempFile(dir, FILE_NAME, ".tmp");
+		try {
+			Files.writeString(temp, text);
+			Files.move(temp, file,
+					StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * @return  the number of outputs rebuilt and skipped, for the end of a run
+	 */
+	String report() {
+		return String.format("Rebuilt %d, skipped %d unchanged", rebuilt.get(), skipped.get());
+	}
+
+
+	private synchronized List<Dependency> sharedState(Entry previous) throws IOException {
+		if (sharedState == null) {
+			sharedState = new ArrayList<>();
+			for (Path path : shared)
+				sharedState.add(check(path, previous));
+		}
+		return sharedState;
+	}
+
+	/**
+	 * @return  the current state of the specified file, hashed only if the previous
+	 * entry does not have it with the same last modified time and size
+	 */
+	private static Dependency check(Path path, Entry previous) throws IOException {
+		final BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		}
+		catch (NoSuchFileException e) {
+			return new Dependency(path, ABSENT, ABSENT, ABSENT);
+		}
+
+		final String modified = attributes.lastModifiedTime().toString();
+		final String size = Long.toString(attributes.size());
+		if (previous != null) {
+			for (Dependency dependency : previous.dependencies) {
+				if (dependency.path.equals(path) &&
+						    dependency.modified.equals(modified) && dependency.size.equals(size))
+					return dependency;
+			}
+		}
+		return new Dependency(path, modified, size, hash(path));
+	}
+
+	private static boolean sameHashes(Entry previous, Entry current) {
+		if (previous.dependencies.size() != current.dependencies.size()) return false;
+		for (int i = 0; i < current.dependencies.size(); i++) {
+			final Dependency a = previous.dependencies.get(i), b = current.dependencies.get(i);
+			if (!a.path.equals(b.path) || !a.hash.equals(b.hash)) return false;
+		}
+		return true;
+	}
+
+	private static boolean sameStats(Entry previous, Entry current) {
+		for (int i = 0; i < current.dependencies.size(); i++) {
+			if (!previous.dependencies.get(i).sameStat(current.dependencies.get(i))) return false;
+		}
+		return true;
+	}
+
+	private static String hash(Path path) throws IOException {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {  // required on every platform
+			throw new AssertionError(e);
+		}
+
+		try (final FileChannel channel = FileChannel.open(path)) {
+			final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+			while (channel.read(buffer) != -1) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		}
+
+		final StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest())
+			hex.append(String.format("%02x", b));
+		return hex.toString();
+	}
+
+	/**
+	 * @return  the entries of the manifest, empty if it does not exist or is not a
+	 * manifest, in which case all outputs are converted again
+	 */
+	private static Map<Path, Entry> read(Path file) throws IOException {
+		final Map<Path, Entry> entries = new LinkedHashMap<>();
+
+		final List<String> lines;
+		try {
+			lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		}
+		catch (NoSuchFileException e) {
+			return entries;
+		}
+		if (lines.isEmpty() || !lines.get(0).equals(HEADER)) return entries;
+
+		Entry entry = null;
+		for (String line : lines.subList(1, lines.size())) {
+			final String[] fields = line.split("\t", -1);
+			if (line.startsWith("\t") && fields.length == 5 && entry != null)
+				entry.dependencies.add(
+						new Dependency(Paths.get(fields[1]), fields[2], fields[3], fields[4]));
+			else if (!line.startsWith("\t") && fields.length == 2) {
+				entry = new Entry(fields[1], new ArrayList<>());
+				entries.put(Paths.get(fields[0]), entry);
+			}
+			// damaged, converted again
+			else
+				return new LinkedHashMap<>();
+		}
+		return entries;
+	}
+}
@@ -0,0 +1,269 @@
+import trace.Allocation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A channel compressing the bytes written to it to gzip, the same way as pigz. The
+ * input is split into blocks compressed independently in parallel, while more input is
+ * written. Each block is primed with the end of the previous block as dictionary, and
+ * ends with a sync flush so the compressed blocks join into a single deflate stream.
+ *
+ * <p>
+ * Compressed blocks are written to the output in order, as soon as they and all blocks
+ * before them are complete. The number of blocks waiting to be written is bounded, a
+ * writer faster than the compression waits.
+ */
+final class ParallelGzip implements GatheringByteChannel {
+	private static final int BLOCK_SIZE = 128 * 1024;
+	private static final int DICTIONARY_SIZE = 32 * 1024;
+
+	private static final byte[] HEADER = {
+			0x1f, (byte) 0x8b,  // magic
+			8,                  // deflate
+			0,                  // flags
+			0, 0, 0, 0,         // modification time, none
+			0,                  // extra flags
+			(byte) 255          // operating system, unknown
+	};
+
+	// shared by all conversions, compression is CPU bound
+	private static final ExecutorService POOL = Executors.newFixedThreadPool(
+			Runtime.getRuntime().availableProcessors(),
+			runnable -> {
+				final Thread thread = new Thread(runnable, "gzip");
+				thread.setDaemon(true);
+				return thread;
+			});
+	private static final int MAX_PENDING = 2 * Runtime.getRuntime().availableProcessors();
+
+
+	/**
+	 * Totals of all outputs compressed with the same Totals.
+	 */
+	static final class Totals {
+		private final AtomicLong files = new AtomicLong();
+		private final AtomicLong uncompressed = new AtomicLong(), compressed = new AtomicLong();
+		private final AtomicLong wallNanos = new AtomicLong(), compressNanos = new AtomicLong();
+
+		/**
+		 * @return  compression ratio, time and throughput in human readable form
+		 */
+		@Override
+		public String toString() {
+			final double ratio =
+					(uncompressed.get() == 0) ? 0 : (double) compressed.get() / uncompressed.get();
+			final double seconds = wallNanos.get() / 1e9;
+			return String.format(
+					"Compressed %d file(s), %d to %d bytes (%.1f%%) in %.3f s, %.3f s of compression, %.2f MB/s",
+					files.get(), uncompressed.get(), compressed.get(), ratio * 100,
+					seconds, compressNanos.get() / 1e9,
+					(seconds == 0) ? 0 : uncompressed.get() / seconds / (1024 * 1024));
+		}
+	}
+
+
+	private final WritableByteChannel out;
+	private final WritableByteChannel copy;
+	private final int level;
+	private final Totals totals;
+
+	private final long start = System.nanoTime();
+	private final CRC32 crc = new CRC32();
+	private long size = 0, compressedSize = 0;
+
+	private byte[] block = new byte[BLOCK_SIZE];
+	private int blockLength = 0;
+	// end of the previous block
+	private byte[] dictionary = null;
+	private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+	private boolean open = true;
+
+
+	/**
+	 * @param out   receives the compressed bytes, not closed by this channel
+	 * @param copy  receives the uncompressed bytes as they are written, may be null
+	 * @param level the compression level, as of {@link Deflater}
+	 * @param totals    receives the sizes and time once this channel is closed
+	 */
+	ParallelGzip(
+			WritableByteChannel out,
+			WritableByteChannel copy,
+			int level,
+			Totals totals) throws IOException {
+		this.out = out;
+		this.copy = copy;
+		this.level = level;
+		this.totals = totals;
+
+		writeFully(ByteBuffer.wrap(HEADER));
+	}
+
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		return (int) write(new ByteBuffer[] { src }, 0, 1);
+	}
+
+	@Override
+	public long write(ByteBuffer[] srcs) throws IOException {
+		return write(srcs, 0, srcs.length);
+	}
+
+	@Override
+	public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+		if (!open) throw new IOException("Channel closed");
+
+		if (copy != null) {
+			// the sources are read again for compression
+			final int[] positions = new int[length];
+			for (int i = 0; i < length; i++) positions[i] = srcs[offset + i].position();
+			for (int i = 0; i < length; i++) {
+				while (srcs[offset + i].hasRemaining())
+					copy.write(srcs[offset + i]);
+			}
+			for (int i = 0; i < length; i++) srcs[offset + i].position(positions[i]);
+		}
+
+		long written = 0;
+		for (int i = offset; i < offset + length; i++) {
+			final ByteBuffer src = srcs[i];
+			written += src.remaining();
+
+			while (src.hasRemaining()) {
+				final int count = Math.min(src.remaining(), BLOCK_SIZE - blockLength);
+				src.get(block, blockLength, count);
+
+				crc.update(block, blockLength, count);
+				blockLength += count;
+
+				if (blockLength == BLOCK_SIZE)
+					submit(false);
+			}
+		}
+		size += written;
+		return written;
+	}
+
+	@Override
+	public boolean isOpen() { return open; }
+
+	/**
+	 * Compresses the rest of the input, writes all blocks and the gzip trailer.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!open) return;
+		open = false;
+
+		try {
+			submit(true);
+			while (!pending.isEmpty())
+				writeBlock(pending.poll());
+
+			final ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+			trailer.putInt((int) crc.getValue());
+			trailer.putInt((int) size);    // modulo 2^32
+			trailer.flip();
+			writeFully(trailer);
+		}
+		finally {
+			// blocks not written if failed
+			pending.forEach(future -> future.cancel(true));
+
+			totals.files.incrementAndGet();
+			totals.uncompressed.addAndGet(size);
+			totals.compressed.addAndGet(compressedSize + HEADER.length + 8);
+			totals.wallNanos.addAndGet(System.nanoTime() - start);
+		}
+	}
+
+
+	/**
+	 * Submits the current block for compression, and writes the compressed blocks that
+	 * are complete.
+	 * @param last  whether this is the last block
+	 */
+	private void submit(boolean last) throws IOException {
+		final byte[] input = block;
+		final int length = blockLength;
+		final byte[] preset = dictionary;
+
+		pending.add(POOL.submit(() -> compress(input, length, preset, last)));
+
+		// the end of this block is the dictionary of the next one
+		if (!last) {
+			if (length >= DICTIONARY_SIZE)
+				dictionary = Arrays.copyOfRange(input, length - DICTIONARY_SIZE, length);
+			block = new byte[BLOCK_SIZE];
+			blockLength = 0;
+		}
+
+		// write what is complete, wait if too many are pending
+		while (!pending.isEmpty() &&
+				       (pending.peek().isDone() || pending.size() > MAX_PENDING))
+			writeBlock(pending.poll());
+	}
+
+	private byte[] compress(byte[] input, int length, byte[] preset, boolean last) {
+		final long start = System.nanoTime();
+		final long allocation = Allocation.begin();
+
+		final Deflater deflater = new Deflater(level, true);
+		try {
+			if (preset != null) deflater.setDictionary(preset);
+			deflater.setInput(input, 0, length);
+			if (last) deflater.finish();
+
+			// the result of a sync flush is complete once the output is not full
+			byte[] output = new byte[length + length / 8 + 64];
+			int outputLength = 0;
+			while (true) {
+				outputLength += deflater.deflate(output, outputLength, output.length - outputLength,
+						last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+
+				if (last ? deflater.finished() : outputLength < output.length)
+					break;
+				output = Arrays.copyOf(output, output.length * 2);
+			}
+			return Arrays.copyOf(output, outputLength);
+		}
+		finally {
+			deflater.end();
+			totals.compressNanos.addAndGet(System.nanoTime() - start);
+			Allocation.end(allocation);
+		}
+	}
+
+	private void writeBlock(Future<byte[]> future) throws IOException {
+		final byte[] compressed;
+		try {
+			compressed = future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while compressing", e);
+		}
+		catch (ExecutionException e) {
+			throw new IOException("Failed to compress", e.getCause());
+		}
+
+		compressedSize += compressed.length;
+		writeFully(ByteBuffer.wrap(compressed));
+	}
+
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			out.write(buffer);
+	}
+}
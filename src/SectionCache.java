@@ -0,0 +1,278 @@
+import hw.Section;
+import html.Element;
+import html.HtmlWriter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * An on disk cache of rendered sections, shared by all conversions using the same
+ * directory. Entries are keyed by a hash of the lines of a section and the renderer
+ * version, and hold the html source of the contents of the section element. A cached
+ * section is used without being parsed or rendered.
+ *
+ * <p>
+ * Several processes may use the same directory at the same time. Entries are written to
+ * a temporary file and moved into place atomically, and eviction is done by one process
+ * at a time, and by one thread at a time within a process. When the total size exceeds
+ * the limit, the least recently used entries are removed, the last modified time of an
+ * entry is updated when it is used.
+ */
+final class SectionCache {
+	// must be changed whenever the html form of sections changes
+	private static final String RENDERER_VERSION = "1";
+
+	private static final String ENTRY_SUFFIX = ".html";
+	private static final String LOCK_FILE = ".lock";
+	// eviction removes entries until the size is below this fraction of the limit
+	private static final double EVICTION_TARGET = 0.9;
+	// by the real path of the cache directory, the file lock is held by the whole process
+	private static final Map<Path, ReentrantLock> EVICTION_LOCKS = new ConcurrentHashMap<>();
+
+	private final Path dir;
+	private final long maxSize;
+	private final int tableChunkRows;
+	private final HtmlWriter.Format format;
+	// distinguishes rendering options that change the html form of sections
+	private final String variant;
+
+	private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+	private final AtomicLong bytesWritten = new AtomicLong();
+	private final ReentrantLock evictionLock;
+
+
+	/**
+	 * @param dir   the cache directory, created if it does not exist
+	 * @param maxSize   the size limit of all entries in bytes
+	 * @param tableChunkRows    rows of each chunk of compact tables, 0 if tables are not
+	 *                          compact, see {@link hw.Table#setChunkRows(int)}
+	 * @param format    how the html source of sections is laid out
+	 */
+	SectionCache(Path dir, long maxSize, int tableChunkRows, HtmlWriter.Format format)
+			throws IOException {
+		this.dir = Files.createDirectories(dir);
+		this.evictionLock =
+				EVICTION_LOCKS.computeIfAbsent(this.dir.toRealPath(), key -> new ReentrantLock());
+		this.maxSize = maxSize;
+		this.tableChunkRows = tableChunkRows;
+		this.format = format;
+
+		// empty for the default options, keeping the keys of the entries stored before
+		final List<String> options = new ArrayList<>();
+		if (tableChunkRows > 0) options.add("tables=" + tableChunkRows);
+		if (format != HtmlWriter.Format.DEFAULT) options.add("format=" + format);
+		this.variant = String.join(",", options);
+	}
+
+	long getHits() { return hits.get(); }
+	long getMisses() { return misses.get(); }
+
+
+	/**
+	 * Returns the html form of the section with the specified lines, from the cache if
+	 * present, otherwise the section is parsed, rendered and stored in the cache. The
+	 * result is a &lt;div&gt; element, the same as {@link Section#toHtmlContent()}.
+	 */
+	Element render(List<? extends CharSequence> lines) {
+		final String key = key(lines);
+		final Path entry = dir.resolve(key.substring(0, 2)).resolve(key + ENTRY_SUFFIX);
+
+		String fragment = read(entry);
+		if (fragment != null)
+			hits.incrementAndGet();
+		else {
+			misses.incrementAndGet();
+
+			// the contents of the section element, rendered without the element
+			final StringBuilder builder = new StringBuilder();
+			final HtmlWriter writer = new HtmlWriter(builder, format);
+			try {
+				final Section section = Section.parse(lines);
+				section.setTableChunkRows(tableChunkRows);
+				for (hw.Content<?> content : section.getContents())
+					content.render(writer);
+			}
+			catch (IOException e) {  // StringBuilder does not throw
+				throw new UncheckedIOException(e);
+			}
+			fragment = builder.toString();
+
+			store(entry, fragment);
+		}
+
+		// an empty element has no content, and is written without a line break
+		final Element section = new Element("div");
+		if (!fragment.isEmpty())
+			section.appendContent(fragment);
+		return section;
+	}
+
+	/**
+	 * Removes the least recently used entries if the cache is over its size limit. Only
+	 * checked if entries were added since the last call.
+	 */
+	void evictIfNeeded() throws IOException {
+		final long written = bytesWritten.getAndSet(0);
+		if (written == 0) return;
+
+		// another thread of this process is evicting, checked again on the next call
+		if (!evictionLock.tryLock()) {
+			bytesWritten.addAndGet(written);
+			return;
+		}
+		try (final FileChannel lockChannel = FileChannel.open(dir.resolve(LOCK_FILE),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			final FileLock lock = tryLock(lockChannel);
+			// another process is evicting
+			if (lock == null) {
+				bytesWritten.addAndGet(written);
+				return;
+			}
+
+			try {
+				evict();
+			}
+			finally {
+				lock.release();
+			}
+		}
+		finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * @return  the lock of the whole lock file, null if it is held by another process,
+	 * or by this process through another channel
+	 */
+	private static FileLock tryLock(FileChannel channel) throws IOException {
+		try {
+			return channel.tryLock();
+		}
+		catch (OverlappingFileLockException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Removes the least recently used entries if the cache is over its size limit, with
+	 * the lock held.
+	 */
+	private void evict() throws IOException {
+		final List<Path> entries = new ArrayList<>();
+		final List<BasicFileAttributes> attributes = new ArrayList<>();
+		long size = 0;
+
+		try (final Stream<Path> files = Files.walk(dir, 2)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				if (!file.getFileName().toString().endsWith(ENTRY_SUFFIX)) continue;
+
+				try {
+					attributes.add(Files.readAttributes(file, BasicFileAttributes.class));
+					entries.add(file);
+					size += attributes.get(attributes.size()-1).size();
+				}
+				catch (NoSuchFileException e) {
+					// removed meanwhile
+				}
+			}
+		}
+
+		if (size <= maxSize) return;
+
+		// least recently used first
+		final List<Integer> order = new ArrayList<>();
+		for (int i = 0; i < entries.size(); i++) order.add(i);
+		order.sort(Comparator.comparing(i -> attributes.get(i).lastModifiedTime()));
+
+		for (int i : order) {
+			if (size <= maxSize * EVICTION_TARGET) break;
+			Files.deleteIfExists(entries.get(i));
+			size -= attributes.get(i).size();
+		}
+	}
+
+
+	/**
+	 * @return  the content of the entry, null if it does not exist
+	 */
+	private static String read(Path entry) {
+		try {
+			final String fragment = Files.readString(entry);
+			// mark as recently used
+			Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+			return fragment;
+		}
+		catch (NoSuchFileException e) {
+			return null;
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void store(Path entry, String fragment) {
+		try {
+			Files.createDirectories(entry.getParent());
+
+			// readers only ever see complete entries
+			final byte[] bytes = fragment.getBytes(StandardCharsets.UTF_8);
+			final Path temp = Files.createTempFile(entry.getParent(), null, ".tmp");
+			try {
+				Files.write(temp, bytes);
+				Files.move(temp, entry,
+						StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			finally {
+				Files.deleteIfExists(temp);
+			}
+
+			bytesWritten.addAndGet(bytes.length);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @return  hex form of the hash of the lines, renderer version and variant
+	 */
+	private String key(List<? extends CharSequence> lines) {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {  // required on every platform
+			throw new AssertionError(e);
+		}
+
+		digest.update((RENDERER_VERSION + '\n' + variant + '\n').getBytes(StandardCharsets.UTF_8));
+		// lines never contain line breaks, terminating each makes the input unambiguous
+		for (CharSequence line : lines) {
+			digest.update(line.toString().getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) '\n');
+		}
+
+		final StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest())
+			hex.append(String.format("%02x", b));
+		return hex.toString();
+	}
+}
@@ -0,0 +1,152 @@
+import hw.*;
+import trace.Allocation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Wall time and allocated bytes of each phase of a conversion, and the size of the
+ * document. Phases are consecutive, each starts where the previous one ended.
+ *
+ * <p>
+ * Allocation is that of the thread creating the Stats and of the tasks it runs on other
+ * threads, as sections may be parsed and rendered in parallel, see {@link Allocation}.
+ * The thread counts from its start, so the first phase also includes the allocation of
+ * the startup of the JVM on the main thread. Phases must be ended on that thread.
+ */
+final class Stats {
+
+	/** A completed phase. */
+	private static final class Phase {
+		private final String name;
+		private final long nanos, allocatedBytes;
+
+		private Phase(String name, long nanos, long allocatedBytes) {
+			this.name = name;
+			this.nanos = nanos;
+			this.allocatedBytes = allocatedBytes;
+		}
+	}
+
+
+	// counts not known, such as those of sections taken from the cache
+	private static final long UNKNOWN = -1;
+
+	private final List<Phase> phases = new ArrayList<>();
+	private long phaseStart, phaseAllocated;
+
+	private long sections = UNKNOWN, paragraphs = UNKNOWN, tables = UNKNOWN, cells = UNKNOWN;
+	private long outputBytes = UNKNOWN;
+
+
+	/**
+	 * @param start  the time the first phase started, as given by System.nanoTime()
+	 */
+	Stats(long start) {
+		phaseStart = start;
+		phaseAllocated = 0;
+		Allocation.measure();
+	}
+
+	/**
+	 * Ends the current phase and starts the next one.
+	 */
+	void endPhase(String name) {
+		final long now = System.nanoTime();
+		final long allocated = Allocation.allocatedBytes();
+		phases.add(new Phase(name, now - phaseStart, allocated - phaseAllocated));
+
+		// excludes the time spent measuring
+		phaseStart = System.nanoTime();
+		phaseAllocated = allocated;
+	}
+
+	void setOutputBytes(long outputBytes) { this.outputBytes = outputBytes; }
+
+	/**
+	 * Counts the sections, paragraphs, tables and cells of the specified document.
+	 */
+	void count(HWDocument hwDoc) {
+		sections = hwDoc.getSections().size();
+		paragraphs = tables = cells = 0;
+
+		for (Section section : hwDoc.getSections())
+			count(section);
+	}
+
+	private void count(Group group) {
+		for (hw.Content<?> content : group.getContents()) {
+			if (content instanceof Paragraph)
+				paragraphs++;
+
+			if (content instanceof Group)
+				count((Group) content);
+			else if (content instanceof Table) {
+				tables++;
+				cells += ((Table) content).getCellCount();
+			}
+		}
+	}
+
+
+	/**
+	 * @return  the report in human readable form, one line per phase followed by the
+	 * counts
+	 */
+	String toText() {
+		final StringBuilder text = new StringBuilder();
+		text.append(String.format("%-12s %12s %14s%n", "Phase", "Time (ms)", "Allocated (B)"));
+
+		long totalNanos = 0, totalAllocated = 0;
+		for (Phase phase : phases) {
+			text.append(String.format(Locale.ROOT, "%-12s %12.3f %14d%n",
+					phase.name, phase.nanos / 1e6, phase.allocatedBytes));
+			totalNanos += phase.nanos;
+			totalAllocated += phase.allocatedBytes;
+		}
+		text.append(String.format(Locale.ROOT, "%-12s %12.3f %14d%n",
+				"total", totalNanos / 1e6, totalAllocated));
+
+		appendTextCount(text, "Sections", sections);
+		appendTextCount(text, "Paragraphs", paragraphs);
+		appendTextCount(text, "Tables", tables);
+		appendTextCount(text, "Table cells", cells);
+		appendTextCount(text, "Output bytes", outputBytes);
+
+		return text.toString();
+	}
+
+	/**
+	 * @return  the report as a JSON object, unknown counts are omitted
+	 */
+	String toJson() {
+		final StringBuilder json = new StringBuilder("{\"phases\":[");
+		for (int i = 0; i < phases.size(); i++) {
+			final Phase phase = phases.get(i);
+			if (i > 0) json.append(',');
+			json.append(String.format(Locale.ROOT,
+					"{\"name\":\"%s\",\"nanos\":%d,\"allocatedBytes\":%d}",
+					phase.name, phase.nanos, phase.allocatedBytes));
+		}
+		json.append(']');
+
+		appendJsonCount(json, "sections", sections);
+		appendJsonCount(json, "paragraphs", paragraphs);
+		appendJsonCount(json, "tables", tables);
+		appendJsonCount(json, "cells", cells);
+		appendJsonCount(json, "outputBytes", outputBytes);
+
+		return json.append('}').toString();
+	}
+
+	private static void appendTextCount(StringBuilder text, String name, long count) {
+		if (count != UNKNOWN)
+			text.append(String.format("%-12s %12d%n", name, count));
+	}
+
+	private static void appendJsonCount(StringBuilder json, String name, long count) {
+		if (count != UNKNOWN)
+			json.append(",\"").append(name).append("\":").append(count);
+	}
+}
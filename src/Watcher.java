@@ -0,0 +1,219 @@
+import hw.*;
+import html.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts a HW document again every time it changes. Only the sections whose lines
+ * changed since the last conversion are parsed and rendered, the others are reused from
+ * memory. The css file, config file, base css and script are watched as well. The output
+ * is only written when its content changes.
+ */
+final class Watcher {
+	// events closer together than this are handled as one change
+	private static final long DEBOUNCE_MILLIS = 100;
+
+	private final Path input, output;
+	private final String cssFile;
+	private final Map<String, String> options;
+
+	private final WatchService watchService;
+	private final Set<Path> watchedDirs = new HashSet<>();
+	private final Set<Path> watchedFiles = new HashSet<>();
+
+	private Converter converter;
+	// html form of each section, keyed by the lines of the section
+	private Map<List<String>, Element> renderedSections = new HashMap<>();
+	private byte[] lastOutput;
+
+
+	/**
+	 * @param cssFile   path to css appended to the base css, may be null
+	 * @param options   the command line options used for each conversion
+	 */
+	Watcher(Path input, Path output, String cssFile, Map<String, String> options)
+			throws IOException {
+		this.input = input.toAbsolutePath().normalize();
+		this.output = output.toAbsolutePath().normalize();
+		this.cssFile = cssFile;
+		this.options = options;
+		this.watchService = FileSystems.getDefault().newWatchService();
+	}
+
+
+	/**
+	 * Converts the input, then again on every change, until interrupted.
+	 */
+	void watch() throws IOException, InterruptedException {
+		converter = HWtoHTML.newConverter(options, cssFile);
+		lastOutput = readOutput();
+		updateWatchedFiles();
+		tryRebuild();
+
+		while (true) {
+			final Set<Path> changed = new HashSet<>();
+			collectEvents(watchService.take(), changed);
+
+			// wait for the burst of events to settle
+			WatchKey key;
+			while ((key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null)
+				collectEvents(key, changed);
+
+			changed.retainAll(watchedFiles);
+			if (changed.isEmpty()) continue;
+
+			// anything other than the input affects the head only
+			if (!changed.equals(Set.of(input))) {
+				HWtoHTML.reloadConfig();
+				converter = HWtoHTML.newConverter(options, cssFile);
+				updateWatchedFiles();
+			}
+
+			tryRebuild();
+		}
+	}
+
+	/**
+	 * @return  the html source of the existing output without the final line separator,
+	 * as compared by {@link #rebuild()}, null if there is none or it is compressed, in
+	 * which case the first conversion is written
+	 */
+	private byte[] readOutput() throws IOException {
+		// the compressed file may be missing or out of date
+		if (!Files.exists(output) || converter.getGzipTotals() != null) return null;
+
+		final byte[] content = Files.readAllBytes(output);
+		final byte[] separator = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+		final int length = content.length - separator.length;
+		return (length >= 0 && Arrays.equals(
+				content, length, content.length, separator, 0, separator.length)) ?
+				Arrays.copyOf(content, length) :
+				content;
+	}
+
+	/**
+	 * Converts the input, reporting a failure and continuing to watch, as the next
+	 * change may fix it.
+	 */
+	private void tryRebuild() {
+		try {
+			rebuild();
+		}
+		catch (IOException e) {
+			System.err.println("Failed to convert file: " + input);
+			e.printStackTrace();
+		}
+	}
+
+
+	/**
+	 * Converts the input, reusing the sections that did not change.
+	 */
+	private void rebuild() throws IOException {
+		final Map<List<String>, Element> previous = renderedSections;
+		final Map<List<String>, Element> current = new HashMap<>();
+		final List<Element> sections = new ArrayList<>();
+		final String[] header = new String[2];
+
+		final HWParser parser = new HWParser(new HWParser.Listener() {
+			@Override
+			public void header(String title, String author) {
+				header[0] = title;
+				header[1] = author;
+			}
+
+			@Override
+			public void sectionLines(List<CharSequence> lines) {
+				final List<String> key = new ArrayList<>(lines.size());
+				lines.forEach(line -> key.add(line.toString()));
+
+				Element section = previous.get(key);
+				if (section == null)
+					section = converter.parse(key).toHtmlContent();
+
+				current.put(key, section);
+				sections.add(section);
+			}
+
+			@Override
+			public void section(Section section) { throw new AssertionError(); }
+		});
+
+		try (final FileChannel channel = FileChannel.open(input)) {
+			parser.feedAll(channel);
+		}
+		parser.finish();
+
+		final long reused =
+				current.keySet().stream().filter(previous::containsKey).count();
+		renderedSections = current;
+
+		final HtmlDocument htmlDoc = converter.toHtml(header[0], header[1], sections, output);
+
+		// serialized once, compared, then written with the output options such as --gzip
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (final Writer writer = new OutputStreamWriter(bytes, StandardCharsets.UTF_8)) {
+			converter.writeTo(htmlDoc, writer);
+		}
+		final byte[] content = bytes.toByteArray();
+
+		if (Arrays.equals(content, lastOutput)) {
+			System.out.printf("%s unchanged%n", output);
+			return;
+		}
+
+		converter.writeOutput(content, output);
+		lastOutput = content;
+		System.out.printf("Wrote %s, %d sections, %d reused%n", output, sections.size(), reused);
+	}
+
+
+	/**
+	 * Watches the input, the css file and the config files, registering their
+	 * directories as needed.
+	 */
+	private void updateWatchedFiles() throws IOException {
+		final List<Path> files = new ArrayList<>(HWtoHTML.configFiles());
+		files.add(input);
+		if (cssFile != null) files.add(Paths.get(cssFile));
+
+		watchedFiles.clear();
+		for (Path file : files)
+			watchedFiles.add(file.toAbsolutePath().normalize());
+
+		for (Path file : watchedFiles) {
+			final Path dir = file.getParent();
+			if (dir != null && Files.isDirectory(dir) && watchedDirs.add(dir)) {
+				dir.register(watchService,
+						StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_MODIFY,
+						StandardWatchEventKinds.ENTRY_DELETE);
+			}
+		}
+	}
+
+	/**
+	 * Adds the files named by the events of the key to the set.
+	 */
+	private void collectEvents(WatchKey key, Set<Path> changed) {
+		final Path dir = (Path) key.watchable();
+
+		for (WatchEvent<?> event : key.pollEvents()) {
+			// events were lost, assume everything changed
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+				changed.addAll(watchedFiles);
+			else
+				changed.add(dir.resolve((Path) event.context()));
+		}
+
+		key.reset();
+	}
+}
@@ -1,15 +1,39 @@
 package html;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
 /**
- * Represents an attribute on a Element.
- * @version 1.0
+ * Represents an attribute on a Element. Attributes are immutable and may be shared by
+ * any number of elements. Attributes created with {@link #shared(String, String)} keep
+ * their serialized form, they are meant to be constants used by many elements.
+ * @version 1.2
  */
 public class Attribute {
 	private final String name, value;
+	// name="value" as string and UTF-8, only kept by shared attributes
+	private final String serialized;
+	private final byte[] encoded;
 
 	public Attribute(String name, String value) {
 		this.name = name;
 		this.value = value;
+		this.serialized = null;
+		this.encoded = null;
+	}
+
+	private Attribute(String name, String value, String serialized) {
+		this.name = name;
+		this.value = value;
+		this.serialized = serialized;
+		this.encoded = serialized.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Creates an Attribute to be shared by many elements, serialized once.
+	 */
+	public static Attribute shared(String name, String value) {
+		return new Attribute(name, value, name + "=\"" + value + '"');
 	}
 
 	public String getName() {
@@ -20,8 +44,20 @@ public class Attribute {
 		return value;
 	}
 
+	/**
+	 * Writes this Attribute in the form name="value" to the specified output.
+	 */
+	public void writeTo(Appendable out) throws IOException {
+		if (encoded != null && out instanceof Utf8Output)
+			((Utf8Output) out).write(encoded);
+		else if (serialized != null)
+			out.append(serialized);
+		else
+			out.append(name).append("=\"").append(value).append('"');
+	}
+
 	@Override
 	public String toString() {
-		return String.format("%s=\"%s\"", name, value);
+		return (serialized != null) ? serialized : name + "=\"" + value + '"';
 	}
 }
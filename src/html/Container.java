@@ -5,7 +5,7 @@ import java.util.List;
 
 /**
  * A Container contains HTMLConvertible.
- * @version 1.0
+ * @version 1.1
  */
 public interface Container {
 	/**
@@ -16,7 +16,7 @@ public interface Container {
 	/**
 	 * Appends the specified text as a Text object.
 	 */
-	default void appendContent(String text) {
+	default void appendContent(CharSequence text) {
 		appendContent(new Text(text));
 	}
 
@@ -33,27 +33,37 @@ public interface Container {
 	List<Content> getContents();
 
 	/**
-	 * Finds the Element with the specified name in this and the children of this Container.
-	 * If such Element does not exist, null is returned.
+	 * Finds the first Element with the specified name in the contents of this Container
+	 * and their descendants, in document order. If such Element does not exist, null is
+	 * returned.
 	 */
 	default Element find(String name) {
-		for (Content content : getContents()) {
-			if (!(content instanceof Element)) continue;
-
-			final Element element = (Element) content;
-
-			Element result;
-			if (element.getName().equals(name))
-				result = element;
-			else
-				result = element.find(name);
-
-			if (result != null)
-				return result;
-		}
+		return Index.of(this).first(name);
+	}
 
-		return null;
+	/**
+	 * Finds the first Element with the specified id in the contents of this Container and
+	 * their descendants, in document order. If such Element does not exist, null is
+	 * returned.
+	 */
+	default Element getElementById(String id) {
+		return Index.of(this).byId(id);
 	}
 
-	// consider using a properties object for finding tags
+	/**
+	 * Finds the Elements matching the specified CSS selector in the contents of this
+	 * Container and their descendants, in document order. An Element contained more than
+	 * once is returned once. Supported are type selectors, '*', '#id' and '.class',
+	 * compounds of these such as "div.section", the descendant (whitespace) and child
+	 * ('&gt;') combinators, and groups separated by ','. This Container may match the
+	 * compounds before a combinator, as in "div.section &gt; h4" on a section.
+	 *
+	 * <p>
+	 * Queries are answered from an index, built on the first query and kept up to date
+	 * as contents and attributes are added.
+	 * @throws IllegalArgumentException if the selector is not supported
+	 */
+	default List<Element> select(String selector) {
+		return Index.of(this).select(Selector.parse(selector));
+	}
 }
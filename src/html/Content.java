@@ -1,8 +1,32 @@
 package html;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 /**
  * HTMLConvertible in a HTML document. May be an element (Tags) or text.
- * @version 1.0
+ * @version 1.1
  */
 public interface Content {
+	/**
+	 * Writes the html form of this Content to the specified output. Each character is
+	 * written exactly once, no intermediate string is built for the subtree.
+	 * @param out   the destination of the html source
+	 */
+	void writeTo(Appendable out) throws IOException;
+
+
+	/**
+	 * Writes the specified Content to a new string. Used to implement toString.
+	 */
+	static String toString(Content content) {
+		final StringBuilder builder = new StringBuilder();
+		try {
+			content.writeTo(builder);
+		}
+		catch (IOException e) {  // StringBuilder does not throw
+			throw new UncheckedIOException(e);
+		}
+		return builder.toString();
+	}
 }
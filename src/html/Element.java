@@ -1,64 +1,305 @@
 package html;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
  * A HTML tag.
- * @version 1.0
+ *
+ * <p>
+ * Most elements have at most one attribute and one content, such as table cells. To keep
+ * large documents small, the attributes and contents are each stored inline: nothing
+ * when there is none, the single item itself when there is one, and an array only when
+ * there are more. Arrays of contents grow by doubling, arrays of attributes, which are
+ * few and rarely added, are of the exact size so their count needs no field. The lists
+ * returned by {@link #getAttributes()} and {@link #getContents()} are modifiable views
+ * of this storage.
+ * @version 1.2
  */
 public class Element implements Container, Content {
-	private final String name;
-	private final List<Attribute> attributes = new ArrayList<>();
-	private final List<Content> contents = new ArrayList<>();
+	private final Tag tag;
+
+	// null, a single item or an array, see add
+	private Object attributes, contents;
+	private int contentCount = 0;
+	// the indexes of queried trees containing this Element, null if none, see Index
+	volatile Object indexLinks;
 
 	/**
 	 * Creates a new Element with the specified name.
 	 */
 	public Element(String name) {
-		this.name = name;
+		this.tag = Tag.of(name);
 	}
 
 	/**
 	 * Creates a new Element with the specified name and attributes.
 	 */
 	public Element(String name, Attribute... attributes) {
-		this.name = name;
-		this.attributes.addAll(List.of(attributes));
+		this(name);
+		for (Attribute attribute : attributes)
+			addAttribute(Objects.requireNonNull(attribute));
+	}
+
+
+	public String getName() { return tag.getName(); }
+
+	public void addAttribute(Attribute attribute) {
+		attributes = insertExact(attributes, attributeCount(), attributeCount(), attribute);
+		if (indexLinks != null) Index.attributeAdded(this, attribute);
+	}
+
+	private int attributeCount() {
+		return (attributes == null) ? 0 :
+				(attributes instanceof Object[]) ? ((Object[]) attributes).length : 1;
 	}
 
+	/**
+	 * @return  the attributes of this Element, as a modifiable list
+	 */
+	public List<Attribute> getAttributes() {
+		return new AbstractList<>() {
+			@Override
+			public Attribute get(int index) {
+				return (Attribute) Element.get(attributes, attributeCount(), index);
+			}
+
+			@Override
+			public int size() { return attributeCount(); }
 
-	public String getName() { return name; }
+			@Override
+			public Attribute set(int index, Attribute attribute) {
+				final Attribute previous = get(index);
+				attributes = Element.set(attributes, attributeCount(), index, attribute);
+				if (indexLinks != null) Index.elementChanged(Element.this);
+				return previous;
+			}
 
-	public void addAttribute(Attribute attribute) { attributes.add(attribute); }
-	public List<Attribute> getAttributes() { return attributes; }
+			@Override
+			public void add(int index, Attribute attribute) {
+				Objects.checkIndex(index, attributeCount() + 1);
+				// appended as by addAttribute, the index is kept up to date
+				if (index == attributeCount()) {
+					addAttribute(attribute);
+					return;
+				}
+				attributes = insertExact(attributes, attributeCount(), index, attribute);
+				modCount++;
+				if (indexLinks != null) Index.elementChanged(Element.this);
+			}
+
+			@Override
+			public Attribute remove(int index) {
+				final Attribute previous = get(index);
+				attributes = removeExact(attributes, attributeCount(), index);
+				modCount++;
+				if (indexLinks != null) Index.elementChanged(Element.this);
+				return previous;
+			}
+		};
+	}
 
 	@Override
-	public void appendContent(Content content) { contents.add(content); }
+	public void appendContent(Content content) {
+		contents = add(contents, contentCount++, content);
+		if (indexLinks != null) Index.contentAppended(this, content);
+	}
 
+	/**
+	 * @return  the contents of this Element, as a modifiable list
+	 */
 	@Override
-	public List<Content> getContents() { return contents; }
+	public List<Content> getContents() {
+		return new AbstractList<>() {
+			@Override
+			public Content get(int index) {
+				return (Content) Element.get(contents, contentCount, index);
+			}
 
+			@Override
+			public int size() { return contentCount; }
 
-	@Override
-	public String toString() {
-		final StringBuilder builder = new StringBuilder();
+			@Override
+			public Content set(int index, Content content) {
+				final Content previous = get(index);
+				contents = Element.set(contents, contentCount, index, content);
+				if (indexLinks != null) Index.elementChanged(Element.this);
+				return previous;
+			}
+
+			@Override
+			public void add(int index, Content content) {
+				Objects.checkIndex(index, contentCount + 1);
+				// appended as by appendContent, the index is kept up to date
+				if (index == contentCount) {
+					appendContent(content);
+					return;
+				}
+				contents = insert(contents, contentCount++, index, content);
+				modCount++;
+				if (indexLinks != null) Index.elementChanged(Element.this);
+			}
+
+			@Override
+			public Content remove(int index) {
+				final Content previous = get(index);
+				contents = Element.remove(contents, contentCount--, index);
+				modCount++;
+				if (indexLinks != null) Index.elementChanged(Element.this);
+				return previous;
+			}
+		};
+	}
 
-		// open tag
-		builder.append('<').append(getName());
-		// attributes
-		attributes.forEach(attr -> builder.append(' ').append(attr));
-		builder.append('>');
-		if (!contents.isEmpty())
-			builder.append('\n');
+
+	@Override
+	public void writeTo(Appendable out) throws IOException {
+		writeOpenTag(out);
+		if (contentCount != 0)
+			out.append('\n');
 
 		// content
-		contents.forEach(builder::append);
+		if (contentCount == 1)
+			((Content) contents).writeTo(out);
+		else {
+			for (int i = 0; i < contentCount; i++)
+				((Content) ((Object[]) contents)[i]).writeTo(out);
+		}
 
 		// close tag
-		builder.append('\n');
-		builder.append("</").append(getName()).append('>');
-		builder.append('\n');
+		if (out instanceof Utf8Output)
+			((Utf8Output) out).write(tag.getCloseTag());
+		else {
+			out.append('\n');
+			out.append("</").append(getName()).append('>');
+			out.append('\n');
+		}
+	}
+
+	/**
+	 * Writes the open tag with the attributes of this Element.
+	 */
+	void writeOpenTag(Appendable out) throws IOException {
+		if (out instanceof Utf8Output)
+			((Utf8Output) out).write(tag.getOpenTag());
+		else
+			out.append('<').append(getName());
+		// attributes
+		final int attributeCount = attributeCount();
+		for (int i = 0; i < attributeCount; i++) {
+			out.append(' ');
+			((Attribute) get(attributes, attributeCount, i)).writeTo(out);
+		}
+		out.append('>');
+	}
+
+	@Override
+	public String toString() { return Content.toString(this); }
+
+
+	/**
+	 * Adds an item to inline storage.
+	 * @param storage   null if count is 0, the item if count is 1, an array otherwise
+	 * @param count the number of items in the storage
+	 * @return  the storage with the item added
+	 */
+	private static Object add(Object storage, int count, Object item) {
+		if (count == 0) return item;
+
+		Object[] array;
+		if (count == 1) {
+			array = new Object[2];
+			array[0] = storage;
+		}
+		else {
+			array = (Object[]) storage;
+			if (count == array.length) array = Arrays.copyOf(array, count * 2);
+		}
+		array[count] = item;
+		return array;
+	}
+
+	/**
+	 * Inserts an item in inline storage, before the item at the specified index.
+	 * @return  the storage with the item inserted
+	 */
+	private static Object insert(Object storage, int count, int index, Object item) {
+		if (count == 0) return item;
+
+		final Object[] array;
+		if (count == 1) {
+			array = new Object[2];
+			array[0] = storage;
+		}
+		else {
+			final Object[] old = (Object[]) storage;
+			array = (count == old.length) ? Arrays.copyOf(old, count * 2) : old;
+		}
+		System.arraycopy(array, index, array, index + 1, count - index);
+		array[index] = item;
+		return array;
+	}
+
+	/**
+	 * Removes the item at the specified index from inline storage.
+	 * @return  the storage without the item, a single item left is stored by itself
+	 */
+	private static Object remove(Object storage, int count, int index) {
+		if (count == 1) return null;
+
+		final Object[] array = (Object[]) storage;
+		System.arraycopy(array, index + 1, array, index, count - index - 1);
+		array[count - 1] = null;
+		return (count == 2) ? array[0] : array;
+	}
+
+	/**
+	 * Inserts an item in inline storage of the exact size, before the item at the
+	 * specified index.
+	 * @return  the storage with the item inserted
+	 */
+	private static Object insertExact(Object storage, int count, int index, Object item) {
+		if (count == 0) return item;
+
+		final Object[] array = new Object[count + 1];
+		if (count == 1)
+			array[1 - index] = storage;
+		else {
+			System.arraycopy(storage, 0, array, 0, index);
+			System.arraycopy(storage, index, array, index + 1, count - index);
+		}
+		array[index] = item;
+		return array;
+	}
+
+	/**
+	 * Removes the item at the specified index from inline storage of the exact size.
+	 * @return  the storage without the item, a single item left is stored by itself
+	 */
+	private static Object removeExact(Object storage, int count, int index) {
+		if (count == 1) return null;
+
+		final Object[] array = (Object[]) storage;
+		if (count == 2) return array[1 - index];
+		final Object[] removed = new Object[count - 1];
+		System.arraycopy(array, 0, removed, 0, index);
+		System.arraycopy(array, index + 1, removed, index, count - index - 1);
+		return removed;
+	}
+
+	/**
+	 * Replaces the item at the specified index in inline storage.
+	 * @return  the storage with the item replaced
+	 */
+	private static Object set(Object storage, int count, int index, Object item) {
+		if (count == 1) return item;
+
+		((Object[]) storage)[index] = item;
+		return storage;
+	}
 
-		return builder.toString();
+	private static Object get(Object storage, int count, int index) {
+		Objects.checkIndex(index, count);
+		return (count == 1) ? storage : ((Object[]) storage)[index];
 	}
 }
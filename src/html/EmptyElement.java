@@ -1,12 +1,13 @@
 package html;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
 /**
  * An EmptyElement has no content.
- * @version 1.0
+ * @version 1.1
  */
 public class EmptyElement extends Element {
 
@@ -23,19 +24,5 @@ public class EmptyElement extends Element {
 	public List<Content> getContents() { return Collections.emptyList(); }
 
 	@Override
-	public String toString() {
-		if (getAttributes().isEmpty())
-			return '<' + getName() + '>';
-		else {
-			final StringBuilder builder = new StringBuilder();
-
-			// open tag
-			builder.append('<').append(getName());
-			// attributes
-			getAttributes().forEach(attr -> builder.append(' ').append(attr));
-			builder.append('>');
-
-			return builder.toString();
-		}
-	}
+	public void writeTo(Appendable out) throws IOException { writeOpenTag(out); }
 }
@@ -1,10 +1,12 @@
 package html;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 /**
  * Represents a HTML document. This implementation is not meant to comply to any standard.
- * @version 1.0
+ * @version 1.2
  */
 public final class HtmlDocument implements Container {
 	private static final EmptyElement DOCTYPE = new EmptyElement("!DOCTYPE html");
@@ -18,9 +20,43 @@ public final class HtmlDocument implements Container {
 		return root.getContents();
 	}
 
+	// queried through the root, which may match selectors such as "html > body"
+	@Override
+	public Element find(String name) { return root.find(name); }
+
+	@Override
+	public Element getElementById(String id) { return root.getElementById(id); }
+
+	@Override
+	public List<Element> select(String selector) { return root.select(selector); }
+
+
+	/**
+	 * Writes the html source of this document to the specified output.
+	 */
+	public void writeTo(Appendable out) throws IOException {
+		writeDoctype(out);
+		root.writeTo(out);
+	}
+
+	/**
+	 * Writes the doctype starting every document, for documents written as they are
+	 * rendered, with a HtmlWriter, rather than built.
+	 */
+	public static void writeDoctype(Appendable out) throws IOException {
+		DOCTYPE.writeTo(out);
+		out.append('\n');
+	}
 
 	@Override
 	public String toString() {
-		return DOCTYPE.toString() + '\n' + root.toString();
+		final StringBuilder builder = new StringBuilder();
+		try {
+			writeTo(builder);
+		}
+		catch (IOException e) {  // StringBuilder does not throw
+			throw new UncheckedIOException(e);
+		}
+		return builder.toString();
 	}
 }
@@ -0,0 +1,59 @@
+package html;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Receives html as a sequence of events instead of a tree of Contents. Elements are
+ * started and ended in nested order, and the attributes of an element follow its start,
+ * before any of its content.
+ *
+ * <p>
+ * The events of an element give the same html as the Element with the same attributes
+ * and contents, so a document may be written as it is rendered with a
+ * {@link HtmlWriter}, or built with a {@link TreeBuilder}.
+ */
+public interface HtmlSink {
+	/**
+	 * Starts an element, the following events are its attributes and contents until the
+	 * matching {@link #endElement()}.
+	 */
+	void startElement(String name) throws IOException;
+
+	/**
+	 * Adds an attribute to the element just started.
+	 * @throws IllegalStateException    if the element already has content
+	 */
+	void attribute(Attribute attribute) throws IOException;
+
+	/**
+	 * Literal text, the same as a {@link Text}.
+	 */
+	void text(CharSequence text) throws IOException;
+
+	/**
+	 * Lines of literal text with a separator between them, the same as {@link Lines}.
+	 */
+	void lines(List<? extends CharSequence> lines, String separator) throws IOException;
+
+	/**
+	 * An element without content, the same as an {@link EmptyElement}.
+	 */
+	void emptyElement(String name) throws IOException;
+
+	/**
+	 * An element without content, the same as an {@link EmptyElement}.
+	 */
+	void emptyElement(String name, Attribute... attributes) throws IOException;
+
+	/**
+	 * A Content already built, such as a previously rendered fragment.
+	 */
+	void content(Content content) throws IOException;
+
+	/**
+	 * Ends the innermost element not yet ended.
+	 * @throws IllegalStateException    if there is no such element
+	 */
+	void endElement() throws IOException;
+}
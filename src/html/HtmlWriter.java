@@ -0,0 +1,363 @@
+package html;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A HtmlSink writing the html source to an Appendable as the events arrive, the same as
+ * {@link Content#writeTo(Appendable)} of the Contents the events stand for, without
+ * building them. Only the names of the elements not yet ended are kept.
+ *
+ * <p>
+ * An element is written with a line break after its open tag only if it has content,
+ * which is known once the next event arrives, so the open tag is ended then.
+ *
+ * <p>
+ * The source may instead be minified or indented, see {@link Format}. Text is written
+ * exactly as given in every format, whitespace is only added or removed between tags.
+ */
+public final class HtmlWriter implements HtmlSink {
+
+	/** How the html source is laid out. */
+	public enum Format {
+		/** a line break after each open tag with content and around each close tag */
+		DEFAULT,
+		/**
+		 * no whitespace between tags, attributes quoted only when needed and end tags
+		 * omitted where the html syntax allows
+		 */
+		MINIFIED,
+		/** each tag not next to text on its own line, indented by the depth of its element */
+		PRETTY
+	}
+
+	private static final String INDENT = "  ";
+
+	/**
+	 * An end tag which may be omitted, when followed by the start of one of the
+	 * specified elements, or by the end of its parent if lastChild.
+	 */
+	private static final class OptionalEnd {
+		// null if any element may follow
+		private final Set<String> followers;
+		private final boolean lastChild;
+
+		private OptionalEnd(boolean lastChild, String... followers) {
+			this.followers = (followers.length == 0 && lastChild) ? null : Set.of(followers);
+			this.lastChild = lastChild;
+		}
+	}
+
+	private static final Map<String, OptionalEnd> OPTIONAL_ENDS = Map.ofEntries(
+			Map.entry("html", new OptionalEnd(true)),
+			Map.entry("head", new OptionalEnd(true)),
+			Map.entry("body", new OptionalEnd(true)),
+			Map.entry("p", new OptionalEnd(true,
+					"address", "article", "aside", "blockquote", "details", "dialog", "div",
+					"dl", "fieldset", "figcaption", "figure", "footer", "form", "h1", "h2",
+					"h3", "h4", "h5", "h6", "header", "hgroup", "hr", "main", "menu", "nav",
+					"ol", "p", "pre", "section", "table", "ul")),
+			Map.entry("li", new OptionalEnd(true, "li")),
+			Map.entry("dt", new OptionalEnd(false, "dt", "dd")),
+			Map.entry("dd", new OptionalEnd(true, "dt", "dd")),
+			Map.entry("thead", new OptionalEnd(false, "tbody", "tfoot")),
+			Map.entry("tbody", new OptionalEnd(true, "tbody", "tfoot")),
+			Map.entry("tfoot", new OptionalEnd(true, "tbody")),
+			Map.entry("tr", new OptionalEnd(true, "tr")),
+			Map.entry("td", new OptionalEnd(true, "td", "th")),
+			Map.entry("th", new OptionalEnd(true, "td", "th")));
+
+	// a p must be ended before the end of one of these
+	private static final Set<String> P_END_REQUIRED =
+			Set.of("a", "audio", "del", "ins", "map", "noscript", "video");
+
+
+	private final Appendable out;
+	// out if it is a Utf8Output, the tags are written encoded
+	private final Utf8Output utf8;
+	private final Format format;
+
+	private Tag[] open = new Tag[16];
+	private int depth = 0;
+	// whether the open tag of the innermost element is not yet ended with '>'
+	private boolean pending = false;
+
+	// minified, the end tag not yet written until the next event shows if it is needed
+	private Tag pendingEnd = null;
+	// indented, whether anything was written and whether the last thing written is text
+	private boolean started = false, afterText = false;
+
+	public HtmlWriter(Appendable out) {
+		this(out, Format.DEFAULT);
+	}
+
+	public HtmlWriter(Appendable out, Format format) {
+		this.out = out;
+		this.utf8 = (out instanceof Utf8Output) ? (Utf8Output) out : null;
+		this.format = format;
+	}
+
+	public Format getFormat() { return format; }
+
+
+	/**
+	 * Writes the doctype starting every document, see
+	 * {@link HtmlDocument#writeDoctype(Appendable)}. Must be the first event.
+	 */
+	public void doctype() throws IOException {
+		if (format == Format.DEFAULT)
+			HtmlDocument.writeDoctype(out);
+		else
+			out.append("<!DOCTYPE html>");
+		started = true;
+	}
+
+	@Override
+	public void startElement(String name) throws IOException {
+		final Tag tag = Tag.of(name);
+		endPending(name);
+		beginContent();
+		breakLine();
+		writeOpenTag(tag);
+
+		if (depth == open.length) open = Arrays.copyOf(open, depth * 2);
+		open[depth++] = tag;
+		pending = true;
+	}
+
+	@Override
+	public void attribute(Attribute attribute) throws IOException {
+		if (!pending) throw new IllegalStateException("Attribute after the content of an element");
+
+		out.append(' ');
+		writeAttribute(attribute);
+	}
+
+	@Override
+	public void text(CharSequence text) throws IOException {
+		// nothing to lay out, the same as no content unless in the default format
+		if (text.length() == 0 && format != Format.DEFAULT) return;
+
+		endPending(null);
+		beginContent();
+		out.append(text);
+		afterText = true;
+	}
+
+	@Override
+	public void lines(List<? extends CharSequence> lines, String separator) throws IOException {
+		if (lines.isEmpty() && format != Format.DEFAULT) return;
+
+		endPending(null);
+		beginContent();
+		for (int i = 0; i < lines.size(); i++) {
+			if (i > 0) out.append(separator);
+			out.append(lines.get(i));
+		}
+		afterText = true;
+	}
+
+	@Override
+	public void emptyElement(String name) throws IOException {
+		endPending(name);
+		beginContent();
+		breakLine();
+		writeOpenTag(Tag.of(name));
+		out.append('>');
+		afterText = false;
+	}
+
+	@Override
+	public void emptyElement(String name, Attribute... attributes) throws IOException {
+		endPending(name);
+		beginContent();
+		breakLine();
+		writeOpenTag(Tag.of(name));
+		for (Attribute attribute : attributes) {
+			out.append(' ');
+			writeAttribute(attribute);
+		}
+		out.append('>');
+		afterText = false;
+	}
+
+	@Override
+	public void content(Content content) throws IOException {
+		if (format != Format.DEFAULT) {
+			replay(content);
+			return;
+		}
+
+		beginContent();
+		content.writeTo(out);
+	}
+
+	@Override
+	public void endElement() throws IOException {
+		if (depth == 0) throw new IllegalStateException("No element to end");
+
+		// the end of the parent of the pending end tag
+		endPendingInParent();
+
+		final Tag tag = open[--depth];
+		open[depth] = null;
+
+		// no content
+		final boolean empty = pending;
+		if (pending) {
+			out.append('>');
+			pending = false;
+		}
+
+		switch (format) {
+			case DEFAULT:
+				if (utf8 != null)
+					utf8.write(tag.getCloseTag());
+				else {
+					out.append('\n');
+					out.append("</").append(tag.getName()).append('>');
+					out.append('\n');
+				}
+				break;
+			case MINIFIED:
+				// written or not once the next event arrives, the end of the document if none
+				if (OPTIONAL_ENDS.containsKey(tag.getName()) && (depth > 0 || tag.getName().equals("html")))
+					pendingEnd = tag;
+				else
+					out.append("</").append(tag.getName()).append('>');
+				break;
+			case PRETTY:
+				if (!empty) breakLine();
+				out.append("</").append(tag.getName()).append('>');
+				afterText = false;
+				break;
+		}
+	}
+
+
+	/**
+	 * Ends the pending open tag, its element has content.
+	 */
+	private void beginContent() throws IOException {
+		if (pending) {
+			if (format == Format.DEFAULT)
+				out.append('>').append('\n');
+			else
+				out.append('>');
+			pending = false;
+		}
+	}
+
+	/**
+	 * Writes the end tag pending when minified, unless it may be omitted before the
+	 * start of the specified element.
+	 * @param next  the name of the element started next, null for text
+	 */
+	private void endPending(String next) throws IOException {
+		if (pendingEnd == null) return;
+
+		final OptionalEnd end = OPTIONAL_ENDS.get(pendingEnd.getName());
+		if (next == null || (end.followers != null && !end.followers.contains(next)))
+			out.append("</").append(pendingEnd.getName()).append('>');
+		pendingEnd = null;
+	}
+
+	/**
+	 * Writes the end tag pending when minified, unless it may be omitted before the end
+	 * of its parent, the innermost element.
+	 */
+	private void endPendingInParent() throws IOException {
+		if (pendingEnd == null) return;
+
+		final OptionalEnd end = OPTIONAL_ENDS.get(pendingEnd.getName());
+		final boolean omitted = end.lastChild &&
+				(!pendingEnd.getName().equals("p") || !P_END_REQUIRED.contains(open[depth-1].getName()));
+		if (!omitted)
+			out.append("</").append(pendingEnd.getName()).append('>');
+		pendingEnd = null;
+	}
+
+	/**
+	 * Starts a new line indented by the depth, when indented and not next to text.
+	 */
+	private void breakLine() throws IOException {
+		if (format != Format.PRETTY) return;
+
+		if (started && !afterText) {
+			out.append('\n');
+			for (int i = 0; i < depth; i++) out.append(INDENT);
+		}
+		started = true;
+		afterText = false;
+	}
+
+	private void writeOpenTag(Tag tag) throws IOException {
+		if (utf8 != null)
+			utf8.write(tag.getOpenTag());
+		else
+			out.append('<').append(tag.getName());
+	}
+
+	/**
+	 * Writes an attribute, in the shortest form if minified: without a value if empty,
+	 * without quotes if the value allows, otherwise quoted with the quote it does not
+	 * contain.
+	 */
+	private void writeAttribute(Attribute attribute) throws IOException {
+		if (format != Format.MINIFIED) {
+			attribute.writeTo(out);
+			return;
+		}
+
+		final String value = attribute.getValue();
+		out.append(attribute.getName());
+		if (value.isEmpty()) return;
+
+		boolean unquoted = true, doubleQuote = false;
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			if (c == '"') doubleQuote = true;
+			if (Character.isWhitespace(c) || c == '"' || c == '\'' || c == '=' ||
+					    c == '<' || c == '>' || c == '`')
+				unquoted = false;
+		}
+
+		if (unquoted)
+			out.append('=').append(value);
+		else if (doubleQuote && value.indexOf('\'') < 0)
+			out.append("='").append(value).append('\'');
+		else
+			out.append("=\"").append(value).append('"');
+	}
+
+	/**
+	 * Writes a Content as the events it stands for, to be laid out the same as rendered
+	 * contents. Contents other than elements and lines are written as text.
+	 */
+	private void replay(Content content) throws IOException {
+		if (content instanceof EmptyElement) {
+			final Element element = (Element) content;
+			emptyElement(element.getName(), element.getAttributes().toArray(new Attribute[0]));
+		}
+		else if (content instanceof Element) {
+			final Element element = (Element) content;
+			startElement(element.getName());
+			for (Attribute attribute : element.getAttributes())
+				attribute(attribute);
+			for (Content child : element.getContents())
+				replay(child);
+			endElement();
+		}
+		else if (content instanceof Lines)
+			lines(((Lines) content).getLines(), ((Lines) content).getSeparator());
+		else {
+			endPending(null);
+			beginContent();
+			content.writeTo(out);
+			afterText = true;
+		}
+	}
+}
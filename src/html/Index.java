@@ -0,0 +1,453 @@
+package html;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+/**
+ * Index of the elements of a Container by tag name, id and class, in document order.
+ * An Index is built the first time a Container is queried, and is then kept up to date
+ * as contents and attributes are added to the elements in it, see
+ * {@link #contentAppended(Element, Content)}.
+ *
+ * <p>
+ * Each occurrence of an element in the tree is an entry. Entries are linked in document
+ * order and numbered with gaps between them, so the entries of an appended subtree are
+ * numbered without renumbering the others in most cases. An element may be shared, such
+ * as {@link BR#INSTANCE}: a shared element changed is found in the tree again, by
+ * rebuilding the Index on the next query.
+ *
+ * <p>
+ * Each element in a valid Index, and the Container if it is an element, is linked to
+ * the Index, weakly as elements may outlive it: only the indexes of the trees an element
+ * is in are updated when it changes, and elements of trees never queried are changed
+ * without any lock.
+ */
+final class Index {
+	// spacing of the numbers of the entries when numbered anew
+	private static final long GAP = 1L << 16;
+
+	// the indexes of all queried Containers, not keeping the Containers alive, used by
+	// queries only
+	private static final Map<Container, Index> INDEXES = new WeakHashMap<>();
+	// guards the changes of the links of elements, see Element#indexLinks
+	private static final Object LINKS_LOCK = new Object();
+
+
+	/** An occurrence of an element in the indexed tree. */
+	private static final class Entry {
+		// null for the Container, see root
+		private final Element element;
+		private final Entry parent;
+		// the next entry in document order
+		private Entry next;
+		private long number;
+		// the last entry in the subtree of this entry, this if none
+		private Entry last = this;
+
+		private Entry(Element element, Entry parent) {
+			this.element = element;
+			this.parent = parent;
+		}
+	}
+
+
+	// the indexed Container, kept weakly as it is the key in INDEXES
+	private final WeakReference<Container> container;
+	// the link of the elements in this Index to it
+	private final WeakReference<Index> link = new WeakReference<>(this);
+
+	private boolean valid = false;
+	// the entry of the Container, first in document order
+	private Entry root;
+	// the first entry of each element, and the elements with more than one
+	private final Map<Element, Entry> entries = new IdentityHashMap<>();
+	private final Set<Element> shared = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	private final Map<String, List<Entry>> byTag = new HashMap<>();
+	private final Map<String, List<Entry>> byId = new HashMap<>();
+	private final Map<String, List<Entry>> byClass = new HashMap<>();
+
+
+	private Index(Container container) {
+		this.container = new WeakReference<>(container);
+	}
+
+	/**
+	 * @return  the Index of the specified Container, built if not yet done
+	 */
+	static Index of(Container container) {
+		final Index index;
+		synchronized (INDEXES) {
+			index = INDEXES.computeIfAbsent(container, Index::new);
+		}
+
+		synchronized (index) {
+			if (!index.valid) index.build(container);
+		}
+		return index;
+	}
+
+
+	/**
+	 * Updates the indexes containing the specified element, after the specified content
+	 * was appended to it. Called only if the element is linked to an Index.
+	 */
+	static void contentAppended(Element element, Content content) {
+		if (!(content instanceof Element)) return;
+
+		for (Index index : linked(element)) {
+			synchronized (index) {
+				final Entry entry = index.find(element);
+				if (entry != null) index.append(entry, (Element) content);
+			}
+		}
+	}
+
+	/**
+	 * Updates the indexes containing the specified element, after the specified
+	 * attribute was added to it. Called only if the element is linked to an Index.
+	 */
+	static void attributeAdded(Element element, Attribute attribute) {
+		for (Index index : linked(element)) {
+			synchronized (index) {
+				final Entry entry = index.find(element);
+				// the Container itself is not in its Index
+				if (entry != null && entry != index.root) index.register(entry, attribute);
+			}
+		}
+	}
+
+	/**
+	 * Invalidates the indexes containing the specified element, after its contents or
+	 * attributes were changed other than by appending. They are rebuilt on the next
+	 * query. Called only if the element is linked to an Index.
+	 */
+	static void elementChanged(Element element) {
+		for (Index index : linked(element)) {
+			synchronized (index) {
+				if (index.valid) index.invalidate();
+			}
+		}
+	}
+
+
+	/**
+	 * @return  the live indexes the specified element is linked to
+	 */
+	private static List<Index> linked(Element element) {
+		// a link or an array of links, replaced rather than changed
+		final Object links = element.indexLinks;
+		if (links instanceof WeakReference) {
+			final Index index = (Index) ((WeakReference<?>) links).get();
+			return (index == null) ? List.of() : List.of(index);
+		}
+		if (links == null) return List.of();
+
+		final List<Index> indexes = new ArrayList<>(((Object[]) links).length);
+		for (Object link : (Object[]) links) {
+			final Index index = (Index) ((WeakReference<?>) link).get();
+			if (index != null) indexes.add(index);
+		}
+		return indexes;
+	}
+
+	/**
+	 * Links the specified element to this Index, dropping the links to collected indexes.
+	 */
+	private void link(Element element) {
+		synchronized (LINKS_LOCK) {
+			final List<Object> links = links(element);
+			links.add(link);
+			element.indexLinks = (links.size() == 1) ? links.get(0) : links.toArray();
+		}
+	}
+
+	private void unlink(Element element) {
+		synchronized (LINKS_LOCK) {
+			final List<Object> links = links(element);
+			links.remove(link);
+			element.indexLinks =
+					links.isEmpty() ? null :
+					(links.size() == 1) ? links.get(0) :
+					links.toArray();
+		}
+	}
+
+	/**
+	 * @return  the links of the specified element to live indexes, as a new list
+	 */
+	private static List<Object> links(Element element) {
+		final Object links = element.indexLinks;
+		final List<Object> list = new ArrayList<>(2);
+		if (links instanceof WeakReference)
+			list.add(links);
+		else if (links != null)
+			list.addAll(Arrays.asList((Object[]) links));
+		list.removeIf(link -> ((WeakReference<?>) link).get() == null);
+		return list;
+	}
+
+	/**
+	 * @return  the only entry of the specified element in this Index, null if the
+	 * element is not in this Index or this Index was invalidated
+	 */
+	private Entry find(Element element) {
+		if (!valid) return null;
+
+		final Entry entry = (container.get() == element) ? root : entries.get(element);
+		if (entry != null && shared.contains(element)) {
+			// each occurrence would change, rebuilt on the next query instead
+			invalidate();
+			return null;
+		}
+		return entry;
+	}
+
+
+	private void build(Container container) {
+		invalidate();
+
+		root = new Entry(null, null);
+		Entry last = root;
+		for (Content content : container.getContents()) {
+			if (content instanceof Element)
+				last = index((Element) content, root, last);
+		}
+		root.last = last;
+
+		renumber();
+		for (Entry entry = root.next; entry != null; entry = entry.next)
+			register(entry);
+		if (container instanceof Element) link((Element) container);
+		valid = true;
+	}
+
+	private void invalidate() {
+		if (valid) {
+			for (Element element : entries.keySet()) unlink(element);
+			final Container container = this.container.get();
+			if (container instanceof Element) unlink((Element) container);
+		}
+		valid = false;
+		root = null;
+		entries.clear();
+		shared.clear();
+		byTag.clear();
+		byId.clear();
+		byClass.clear();
+	}
+
+	/**
+	 * Creates the entries of the specified element and its descendants, linked after
+	 * the specified entry. The entries are numbered and registered afterwards.
+	 * @return  the last entry created
+	 */
+	private Entry index(Element element, Entry parent, Entry previous) {
+		final Entry entry = new Entry(element, parent);
+		previous.next = entry;
+
+		if (entries.putIfAbsent(element, entry) != null)
+			shared.add(element);
+		else
+			link(element);
+
+		Entry last = entry;
+		for (Content content : element.getContents()) {
+			if (content instanceof Element)
+				last = index((Element) content, entry, last);
+		}
+		entry.last = last;
+		return last;
+	}
+
+	/**
+	 * Adds the entries of a subtree appended to the element of the specified entry.
+	 */
+	private void append(Entry parent, Element element) {
+		final Entry after = parent.last;
+		final Entry before = after.next;
+
+		// unlinked from the entries after it while indexed
+		after.next = null;
+		final Entry last = index(element, parent, after);
+		last.next = before;
+
+		for (Entry ancestor = parent; ancestor != null && ancestor.last == after;
+		     ancestor = ancestor.parent)
+			ancestor.last = last;
+
+		// numbered between the entries around them if there is room
+		int count = 0;
+		for (Entry entry = after.next; entry != before; entry = entry.next) count++;
+
+		final long low = after.number;
+		final long high = (before != null) ? before.number : low + GAP * (count + 1L);
+		final long step = Math.min(GAP, (high - low) / (count + 1L));
+		if (step == 0)
+			renumber();
+		else {
+			long number = low;
+			for (Entry entry = after.next; entry != before; entry = entry.next)
+				entry.number = (number += step);
+		}
+
+		for (Entry entry = after.next; entry != before; entry = entry.next)
+			register(entry);
+	}
+
+	/**
+	 * Adds a numbered entry to the lists of its name and attributes.
+	 */
+	private void register(Entry entry) {
+		insert(byTag, entry.element.getName(), entry);
+		for (Attribute attribute : entry.element.getAttributes())
+			register(entry, attribute);
+	}
+
+	private void register(Entry entry, Attribute attribute) {
+		if ("id".equals(attribute.getName()))
+			insert(byId, attribute.getValue(), entry);
+		else if ("class".equals(attribute.getName())) {
+			for (String name : attribute.getValue().trim().split("\\s+")) {
+				if (!name.isEmpty()) insert(byClass, name, entry);
+			}
+		}
+	}
+
+	/**
+	 * Inserts an entry in the list of the specified key, in document order.
+	 */
+	private static void insert(Map<String, List<Entry>> map, String key, Entry entry) {
+		final List<Entry> list = map.computeIfAbsent(key, k -> new ArrayList<>(1));
+
+		// usually appended, search otherwise
+		int low = 0, high = list.size();
+		if (high > 0 && list.get(high-1).number < entry.number)
+			low = high;
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+			if (list.get(middle).number <= entry.number)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+
+		// the same class twice
+		if (low > 0 && list.get(low-1) == entry) return;
+		list.add(low, entry);
+	}
+
+	private void renumber() {
+		long number = 0;
+		for (Entry entry = root; entry != null; entry = entry.next) {
+			entry.number = number;
+			number += GAP;
+		}
+	}
+
+	/**
+	 * @return  the first element with the specified name, null if none
+	 */
+	synchronized Element first(String name) {
+		final List<Entry> list = byTag.get(name);
+		return (list == null) ? null : list.get(0).element;
+	}
+
+	/**
+	 * @return  the first element with the specified id, null if none
+	 */
+	synchronized Element byId(String id) {
+		final List<Entry> list = byId.get(id);
+		return (list == null) ? null : list.get(0).element;
+	}
+
+	/**
+	 * @return  the distinct elements other than the Container matching the specified
+	 * selector, in document order of their first occurrence
+	 */
+	synchronized List<Element> select(Selector selector) {
+		final List<Entry> matches = new ArrayList<>();
+		for (Selector.Complex complex : selector.getGroups()) {
+			final Selector.Compound subject = complex.compounds.get(complex.compounds.size()-1);
+			for (Entry entry : candidates(subject)) {
+				if (subject.matches(entry.element) &&
+						    matches(entry, complex, complex.compounds.size()-1))
+					matches.add(entry);
+			}
+		}
+		if (selector.getGroups().size() > 1)
+			matches.sort(Comparator.comparingLong(entry -> entry.number));
+
+		final Set<Element> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+		final List<Element> result = new ArrayList<>(matches.size());
+		for (Entry entry : matches) {
+			if (seen.add(entry.element)) result.add(entry.element);
+		}
+		return result;
+	}
+
+	/**
+	 * @return  the entries that may match the specified compound, in document order
+	 */
+	private Iterable<Entry> candidates(Selector.Compound compound) {
+		List<Entry> smallest = null;
+		if (compound.id != null)
+			smallest = byId.getOrDefault(compound.id, List.of());
+		else if (!compound.classes.isEmpty()) {
+			for (String name : compound.classes) {
+				final List<Entry> list = byClass.getOrDefault(name, List.of());
+				if (smallest == null || list.size() < smallest.size()) smallest = list;
+			}
+		}
+		else if (compound.tag != null) {
+			// type selectors ignore case, names are usually in lower case
+			smallest = byTag.get(compound.tag);
+			if (smallest == null) smallest = byTag.getOrDefault(compound.tag.toLowerCase(Locale.ROOT), List.of());
+		}
+		if (smallest != null) return smallest;
+
+		// all entries but the Container
+		return () -> new Iterator<>() {
+			private Entry next = root.next;
+
+			@Override
+			public boolean hasNext() { return next != null; }
+
+			@Override
+			public Entry next() {
+				if (next == null) throw new NoSuchElementException();
+				final Entry entry = next;
+				next = next.next;
+				return entry;
+			}
+		};
+	}
+
+	/**
+	 * Tests if the ancestors of an entry matching the compound at the specified position
+	 * match the compounds before it.
+	 */
+	private boolean matches(Entry entry, Selector.Complex complex, int position) {
+		if (position == 0) return true;
+
+		final Selector.Compound compound = complex.compounds.get(position-1);
+		final boolean child = complex.combinators.get(position) == '>';
+		for (Entry ancestor = entry.parent; ancestor != null; ancestor = ancestor.parent) {
+			final Element element = element(ancestor);
+			if (element != null && compound.matches(element) &&
+					    matches(ancestor, complex, position-1))
+				return true;
+			if (child) break;
+		}
+		return false;
+	}
+
+	/**
+	 * @return  the element of the specified entry, the Container if it is an element
+	 */
+	private Element element(Entry entry) {
+		if (entry.element != null) return entry.element;
+		final Container container = this.container.get();
+		return (container instanceof Element) ? (Element) container : null;
+	}
+}
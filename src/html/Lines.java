@@ -0,0 +1,41 @@
+package html;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Lines of literal text, written with a separator between them. Stands for a Text for
+ * each line, and the line breaks between them, as a single node.
+ */
+public final class Lines implements Content {
+	/** Separates lines with &lt;br&gt; elements. */
+	public static final String BREAK = "<br>";
+	/** Separates lines with newline characters. */
+	public static final String NEWLINE = "\n";
+
+	private final List<? extends CharSequence> lines;
+	private final String separator;
+
+	/**
+	 * @param lines the lines, kept rather than copied
+	 * @param separator written between the lines, such as {@link #BREAK}
+	 */
+	public Lines(List<? extends CharSequence> lines, String separator) {
+		this.lines = lines;
+		this.separator = separator;
+	}
+
+	public List<? extends CharSequence> getLines() { return lines; }
+	public String getSeparator() { return separator; }
+
+	@Override
+	public void writeTo(Appendable out) throws IOException {
+		for (int i = 0; i < lines.size(); i++) {
+			if (i > 0) out.append(separator);
+			out.append(lines.get(i));
+		}
+	}
+
+	@Override
+	public String toString() { return Content.toString(this); }
+}
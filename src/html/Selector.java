@@ -0,0 +1,171 @@
+package html;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A parsed CSS selector, of the subset supported by {@link Container#select(String)}:
+ * type selectors, '*', '#id' and '.class', compounds of these such as "div.section",
+ * the descendant (whitespace) and child ('>') combinators, and groups separated by ','.
+ */
+final class Selector {
+
+	/** Simple selectors applying to a single element, such as "div.section#a". */
+	static final class Compound {
+		// null if any
+		String tag, id;
+		final List<String> classes = new ArrayList<>(1);
+
+		/**
+		 * Tests if the specified element matches this Compound.
+		 */
+		boolean matches(Element element) {
+			if (tag != null && !tag.equalsIgnoreCase(element.getName())) return false;
+			if (id != null && !hasAttribute(element, "id", id)) return false;
+			for (String name : classes) {
+				if (!hasAttribute(element, "class", name)) return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Tests if the element has an attribute with the specified name and value, or
+		 * containing the value for a class attribute.
+		 */
+		private static boolean hasAttribute(Element element, String name, String value) {
+			for (Attribute attribute : element.getAttributes()) {
+				if (!name.equals(attribute.getName())) continue;
+				if ("class".equals(name) ?
+						    hasClass(attribute.getValue(), value) :
+						    value.equals(attribute.getValue()))
+					return true;
+			}
+			return false;
+		}
+	}
+
+
+	/**
+	 * Compounds joined by combinators, such as "div.section &gt; h4". The element
+	 * matching the last compound is the result.
+	 */
+	static final class Complex {
+		final List<Compound> compounds = new ArrayList<>(2);
+		// combinator before each compound, ' ' or '>', unused for the first
+		final List<Character> combinators = new ArrayList<>(2);
+	}
+
+
+	private final List<Complex> groups;
+
+	private Selector(List<Complex> groups) {
+		this.groups = groups;
+	}
+
+	List<Complex> getGroups() { return groups; }
+
+
+	/**
+	 * @throws IllegalArgumentException if the selector is empty or not supported
+	 */
+	static Selector parse(String selector) {
+		final List<Complex> groups = new ArrayList<>(1);
+
+		Complex complex = new Complex();
+		Compound compound = null;
+		char combinator = 0;    // pending before the next compound
+
+		int i = 0;
+		while (i < selector.length()) {
+			final char c = selector.charAt(i);
+
+			if (Character.isWhitespace(c)) {
+				// descendant unless a combinator follows
+				if (compound != null && combinator == 0) combinator = ' ';
+				compound = null;
+				i++;
+			}
+			else if (c == '>' || c == ',') {
+				if (complex.compounds.isEmpty() || (combinator != 0 && combinator != ' '))
+					throw invalid(selector, i);
+				if (c == ',') {
+					groups.add(complex);
+					complex = new Complex();
+					combinator = 0;
+				}
+				else
+					combinator = '>';
+				compound = null;
+				i++;
+			}
+			else {
+				if (compound == null) {
+					if (!complex.compounds.isEmpty() && combinator == 0)
+						throw invalid(selector, i);
+					compound = new Compound();
+					complex.compounds.add(compound);
+					complex.combinators.add(combinator == 0 ? ' ' : combinator);
+					combinator = 0;
+				}
+
+				if (c == '*') {
+					if (compound.tag != null) throw invalid(selector, i);
+					i++;
+					continue;
+				}
+
+				final int start = (c == '#' || c == '.') ? i+1 : i;
+				int end = start;
+				while (end < selector.length() && isNameChar(selector.charAt(end))) end++;
+				if (end == start) throw invalid(selector, i);
+
+				final String name = selector.substring(start, end);
+				if (c == '#') {
+					if (compound.id != null) throw invalid(selector, i);
+					compound.id = name;
+				}
+				else if (c == '.')
+					compound.classes.add(name);
+				else {
+					// a type selector comes first
+					if (compound.tag != null || compound.id != null || !compound.classes.isEmpty())
+						throw invalid(selector, i);
+					compound.tag = name;
+				}
+				i = end;
+			}
+		}
+
+		if (complex.compounds.isEmpty() || (combinator != 0 && combinator != ' '))
+			throw invalid(selector, selector.length());
+		groups.add(complex);
+
+		return new Selector(groups);
+	}
+
+	private static boolean isNameChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '-' || c == '_';
+	}
+
+	private static IllegalArgumentException invalid(String selector, int index) {
+		return new IllegalArgumentException(
+				"Unsupported selector at index " + index + ": " + selector);
+	}
+
+	/**
+	 * Tests if a class attribute value, a list of names separated by whitespace,
+	 * contains the specified name.
+	 */
+	static boolean hasClass(String value, String name) {
+		int start = 0;
+		while (start < value.length()) {
+			while (start < value.length() && Character.isWhitespace(value.charAt(start))) start++;
+			int end = start;
+			while (end < value.length() && !Character.isWhitespace(value.charAt(end))) end++;
+
+			if (end - start == name.length() && value.startsWith(name, start)) return true;
+			start = end;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,37 @@
+package html;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The name of an Element, interned so all elements with the same name share a single
+ * instance. The open and close tags are encoded once, for writing to a Utf8Output.
+ */
+final class Tag {
+	private static final Map<String, Tag> TAGS = new ConcurrentHashMap<>();
+
+	private final String name;
+	// "<name"
+	private final byte[] openTag;
+	// close tag with the line breaks around it
+	private final byte[] closeTag;
+
+	private Tag(String name) {
+		this.name = name;
+		this.openTag = ('<' + name).getBytes(StandardCharsets.UTF_8);
+		this.closeTag = ("\n</" + name + ">\n").getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return  the Tag with the specified name
+	 */
+	static Tag of(String name) {
+		final Tag tag = TAGS.get(name);
+		return (tag != null) ? tag : TAGS.computeIfAbsent(name, Tag::new);
+	}
+
+	String getName() { return name; }
+	byte[] getOpenTag() { return openTag; }
+	byte[] getCloseTag() { return closeTag; }
+}
@@ -1,16 +1,21 @@
 package html;
 
+import java.io.IOException;
+
 /**
  * Represents literal text.
- * @version 1.0
+ * @version 1.1
  */
 public class Text implements Content {
-	private final String text;
+	private final CharSequence text;
 
-	public Text(String text) {
+	public Text(CharSequence text) {
 		this.text = text;
 	}
 
 	@Override
-	public String toString() { return text; }
+	public void writeTo(Appendable out) throws IOException { out.append(text); }
+
+	@Override
+	public String toString() { return String.valueOf(text); }
 }
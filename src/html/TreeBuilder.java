@@ -0,0 +1,74 @@
+package html;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A HtmlSink building the Contents the events stand for, for callers that need the tree
+ * rather than the html source.
+ */
+public final class TreeBuilder implements HtmlSink {
+	private final List<Content> contents = new ArrayList<>();
+	private final Deque<Element> open = new ArrayDeque<>();
+	// whether the innermost element was just started, and may take attributes
+	private boolean started = false;
+
+	/**
+	 * @return  the Contents built from the events outside of any element
+	 */
+	public List<Content> getContents() { return contents; }
+
+
+	@Override
+	public void startElement(String name) {
+		final Element element = new Element(name);
+		append(element);
+		open.push(element);
+		started = true;
+	}
+
+	@Override
+	public void attribute(Attribute attribute) {
+		if (!started) throw new IllegalStateException("Attribute after the content of an element");
+		open.peek().addAttribute(attribute);
+	}
+
+	@Override
+	public void text(CharSequence text) { append(new Text(text)); }
+
+	@Override
+	public void lines(List<? extends CharSequence> lines, String separator) {
+		append(new Lines(lines, separator));
+	}
+
+	@Override
+	public void emptyElement(String name) {
+		append("br".equals(name) ? BR.INSTANCE : new EmptyElement(name));
+	}
+
+	@Override
+	public void emptyElement(String name, Attribute... attributes) {
+		append(new EmptyElement(name, attributes));
+	}
+
+	@Override
+	public void content(Content content) { append(content); }
+
+	@Override
+	public void endElement() {
+		if (open.isEmpty()) throw new IllegalStateException("No element to end");
+		open.pop();
+		started = false;
+	}
+
+
+	private void append(Content content) {
+		if (open.isEmpty())
+			contents.add(content);
+		else
+			open.peek().appendContent(content);
+		started = false;
+	}
+}
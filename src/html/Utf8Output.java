@@ -0,0 +1,242 @@
+package html;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * An output of html source, encoding characters to UTF-8 straight into direct byte
+ * buffers, written to a channel with a single gathering write once all buffers are full.
+ * Neither a string of the whole document nor an array of its encoded bytes is built.
+ *
+ * <p>
+ * The buffers are taken from a pool shared by all outputs, and returned to it when the
+ * output is closed. Contents may write pre-encoded ASCII, such as tag names, with
+ * {@link #write(byte[])} to skip encoding.
+ *
+ * <p>
+ * Unpaired surrogates are encoded as '?', the same as {@link String#getBytes}. Not
+ * thread safe.
+ */
+public final class Utf8Output implements Appendable, Closeable {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	// buffers filled before they are written together
+	private static final int BUFFER_COUNT = 16;
+	// buffers kept in the pool when not used
+	private static final int MAX_POOLED = 64;
+
+	private static final Deque<ByteBuffer> POOL = new ArrayDeque<>();
+
+	private final GatheringByteChannel channel;
+	private final ByteBuffer[] buffers = new ByteBuffer[BUFFER_COUNT];
+	private int current = 0;
+	// high surrogate waiting for the low surrogate
+	private char highSurrogate = 0;
+	private boolean closed = false;
+	private long bytesWritten = 0;
+
+
+	/**
+	 * @param channel   where the encoded bytes are written, not closed by this output
+	 */
+	public Utf8Output(GatheringByteChannel channel) {
+		this.channel = channel;
+		buffers[0] = take();
+	}
+
+
+	@Override
+	public Utf8Output append(char c) throws IOException {
+		if (highSurrogate != 0 || c >= 0x80) {
+			encode(c);
+			return this;
+		}
+
+		ByteBuffer buffer = buffers[current];
+		if (!buffer.hasRemaining()) buffer = next();
+		buffer.put((byte) c);
+		return this;
+	}
+
+	@Override
+	public Utf8Output append(CharSequence s) throws IOException {
+		return append(s, 0, s.length());
+	}
+
+	@Override
+	public Utf8Output append(CharSequence s, int start, int end) throws IOException {
+		ByteBuffer buffer = buffers[current];
+		int i = start;
+		while (i < end) {
+			if (!buffer.hasRemaining()) buffer = next();
+
+			// ASCII, as much as fits in the buffer
+			final int limit = Math.min(end, i + buffer.remaining());
+			while (i < limit && highSurrogate == 0) {
+				final char c = s.charAt(i);
+				if (c >= 0x80) break;
+				buffer.put((byte) c);
+				i++;
+			}
+
+			if (i < limit) {
+				encode(s.charAt(i++));
+				buffer = buffers[current];
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Writes the specified bytes as they are, such as pre-encoded ASCII.
+	 */
+	public Utf8Output write(byte[] bytes) throws IOException {
+		endUnpaired();
+
+		ByteBuffer buffer = buffers[current];
+		int offset = 0;
+		while (offset < bytes.length) {
+			if (!buffer.hasRemaining()) buffer = next();
+
+			final int length = Math.min(bytes.length - offset, buffer.remaining());
+			buffer.put(bytes, offset, length);
+			offset += length;
+		}
+		return this;
+	}
+
+	/**
+	 * @return  the bytes written to the channel so far, not those still buffered
+	 */
+	public long getBytesWritten() { return bytesWritten; }
+
+	/**
+	 * Writes all buffered bytes to the channel.
+	 */
+	public void flush() throws IOException {
+		final int count = current + 1;
+		for (int i = 0; i < count; i++) buffers[i].flip();
+
+		// a gathering write may write only part of the buffers
+		long remaining = 0;
+		for (int i = 0; i < count; i++) remaining += buffers[i].remaining();
+		bytesWritten += remaining;
+		while (remaining > 0)
+			remaining -= channel.write(buffers, 0, count);
+
+		for (int i = 0; i < count; i++) buffers[i].clear();
+		current = 0;
+	}
+
+	/**
+	 * Writes all buffered bytes, an unpaired high surrogate at the end is written as '?',
+	 * and returns the buffers to the pool. The channel is not closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+
+		try {
+			endUnpaired();
+			flush();
+		}
+		finally {
+			closed = true;
+			for (int i = 0; i < buffers.length && buffers[i] != null; i++) {
+				release(buffers[i]);
+				buffers[i] = null;
+			}
+		}
+	}
+
+
+	/**
+	 * Writes '?' for a high surrogate without the low surrogate.
+	 */
+	private void endUnpaired() throws IOException {
+		if (highSurrogate != 0) {
+			highSurrogate = 0;
+			append('?');
+		}
+	}
+
+	/**
+	 * Encodes a character that is not ASCII, or follows a high surrogate.
+	 */
+	private void encode(char c) throws IOException {
+		// at most 4 bytes
+		ByteBuffer buffer = buffers[current];
+		if (buffer.remaining() < 4) buffer = next();
+
+		if (highSurrogate != 0) {
+			final char high = highSurrogate;
+			highSurrogate = 0;
+
+			if (Character.isLowSurrogate(c)) {
+				final int codePoint = Character.toCodePoint(high, c);
+				buffer.put((byte) (0xF0 | (codePoint >> 18)));
+				buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+				buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+				buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+				return;
+			}
+
+			buffer.put((byte) '?');
+			if (c < 0x80) {
+				if (!buffer.hasRemaining()) buffer = next();
+				buffer.put((byte) c);
+				return;
+			}
+			if (buffer.remaining() < 4) buffer = next();
+		}
+
+		if (c < 0x80)
+			buffer.put((byte) c);
+		else if (c < 0x800) {
+			buffer.put((byte) (0xC0 | (c >> 6)));
+			buffer.put((byte) (0x80 | (c & 0x3F)));
+		}
+		else if (Character.isHighSurrogate(c))
+			highSurrogate = c;
+		else if (Character.isLowSurrogate(c))
+			buffer.put((byte) '?');
+		else {
+			buffer.put((byte) (0xE0 | (c >> 12)));
+			buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+			buffer.put((byte) (0x80 | (c & 0x3F)));
+		}
+	}
+
+	/**
+	 * Moves on to the next buffer, writing all buffers first if they are full.
+	 * @return  the next buffer
+	 */
+	private ByteBuffer next() throws IOException {
+		if (current == BUFFER_COUNT - 1)
+			flush();
+		else {
+			current++;
+			if (buffers[current] == null) buffers[current] = take();
+		}
+		return buffers[current];
+	}
+
+
+	private static ByteBuffer take() {
+		synchronized (POOL) {
+			final ByteBuffer pooled = POOL.poll();
+			if (pooled != null) return pooled;
+		}
+		return ByteBuffer.allocateDirect(BUFFER_SIZE);
+	}
+
+	private static void release(ByteBuffer buffer) {
+		buffer.clear();
+		synchronized (POOL) {
+			if (POOL.size() < MAX_POOLED) POOL.push(buffer);
+		}
+	}
+}
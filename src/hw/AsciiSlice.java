@@ -0,0 +1,75 @@
+package hw;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * A read only view of a range of ASCII encoded bytes as characters. No characters are
+ * copied until toString is called, slicing shares the same underlying buffer.
+ */
+final class AsciiSlice implements CharSequence {
+	private final ByteBuffer bytes;
+	private final int offset, length;
+
+	/**
+	 * Creates a view of the specified range of the buffer. All bytes in the range must be
+	 * ASCII, the buffer must not be modified while this view is in use.
+	 */
+	AsciiSlice(ByteBuffer bytes, int offset, int length) {
+		this.bytes = bytes;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	@Override
+	public int length() { return length; }
+
+	@Override
+	public char charAt(int index) {
+		Objects.checkIndex(index, length);
+		return (char) bytes.get(offset + index);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		Objects.checkFromToIndex(start, end, length);
+		return new AsciiSlice(bytes, offset + start, end - start);
+	}
+
+	/**
+	 * Equal to another AsciiSlice with the same characters. Not equal to other kinds of
+	 * CharSequence, such as String, even with the same characters.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof AsciiSlice)) return false;
+
+		final AsciiSlice other = (AsciiSlice) o;
+		if (length != other.length) return false;
+		for (int i = 0; i < length; i++) {
+			if (bytes.get(offset + i) != other.bytes.get(other.offset + i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Same as the hash code of the String with the same characters.
+	 */
+	@Override
+	public int hashCode() {
+		int hash = 0;
+		for (int i = 0; i < length; i++)
+			hash = 31 * hash + bytes.get(offset + i);
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		final byte[] copy = new byte[length];
+		bytes.duplicate().position(offset).get(copy);
+		return new String(copy, StandardCharsets.US_ASCII);
+	}
+}
@@ -6,4 +6,10 @@ package hw;
 public interface Content<T> extends HTMLConvertible {
 	void append(T content);
 	boolean isEmpty();
+
+	/**
+	 * @return  whether the text of this Content contains math for the engine, see
+	 * {@link MathDelimiters}
+	 */
+	boolean hasMath();
 }
@@ -1,7 +1,10 @@
 package hw;
 
+import html.Attribute;
 import html.Element;
+import html.HtmlSink;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -9,6 +12,7 @@ import java.util.List;
  * A logical grouping of contents. A group is itself a content.
  */
 public abstract class Group implements Content<Content<?>> {
+	private static final Attribute[] NO_ATTRIBUTES = {};
 
 	protected List<Content<?>> contents = new ArrayList<>();
 
@@ -19,14 +23,61 @@ public abstract class Group implements Content<Content<?>> {
 	@Override
 	public boolean isEmpty() { return contents.isEmpty(); }
 
+	/**
+	 * Renders the tables in this Group compact, see {@link Table#setChunkRows(int)}.
+	 */
+	public void setTableChunkRows(int chunkRows) {
+		for (Content<?> content : contents) {
+			if (content instanceof Table)
+				((Table) content).setChunkRows(chunkRows);
+			else if (content instanceof Group)
+				((Group) content).setTableChunkRows(chunkRows);
+		}
+	}
+
+	@Override
+	public boolean hasMath() {
+		for (Content<?> content : contents) {
+			if (content.hasMath()) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Renders all Contents stored in this Group bundled into a &lt;div&gt; element.
+	 */
+	@Override
+	public void render(HtmlSink sink) throws IOException {
+		render(sink, NO_ATTRIBUTES);
+	}
+
+	/**
+	 * Renders this Group the same as {@link #render(HtmlSink)}, with the specified
+	 * attributes added to the &lt;div&gt; element after its own.
+	 */
+	public void render(HtmlSink sink, Attribute... attributes) throws IOException {
+		sink.startElement("div");
+		renderAttributes(sink);
+		for (Attribute attribute : attributes)
+			sink.attribute(attribute);
+
+		for (int i = 0; i < contents.size(); i++)
+			contents.get(i).render(sink);
+
+		sink.endElement();
+	}
+
+	/**
+	 * Renders the attributes of the &lt;div&gt; element of this Group, none by default.
+	 */
+	protected void renderAttributes(HtmlSink sink) throws IOException {}
+
 	/**
 	 * @return  element form of all Contents stored in this Group bundled into a
 	 * &lt;div&gt; element
 	 */
 	@Override
 	public Element toHtmlContent() {
-		final Element div = new Element("div");
-		contents.forEach(content -> div.appendContent(content.toHtmlContent()));
-		return div;
+		return (Element) Content.super.toHtmlContent();
 	}
 }
@@ -1,8 +1,32 @@
 package hw;
 
+import html.HtmlSink;
+import html.TreeBuilder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 /**
  * Classes implementing this interface can be converted to html.Contents.
  */
 public interface HTMLConvertible {
-	html.Content toHtmlContent();
+	/**
+	 * Renders the html form of this object into the specified sink, without building
+	 * html.Contents unless the sink does.
+	 */
+	void render(HtmlSink sink) throws IOException;
+
+	/**
+	 * @return  the html form of this object, built by rendering it into a TreeBuilder
+	 */
+	default html.Content toHtmlContent() {
+		final TreeBuilder builder = new TreeBuilder();
+		try {
+			render(builder);
+		}
+		catch (IOException e) {  // TreeBuilder does not throw
+			throw new UncheckedIOException(e);
+		}
+		return builder.getContents().get(0);
+	}
 }
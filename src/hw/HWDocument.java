@@ -1,17 +1,26 @@
 package hw;
 
+import trace.Allocation;
+import trace.ParseEvent;
+import trace.SectionParseEvent;
+
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * A document containing the title, author, and structured into sections of subtitles and
  * paragraphs.
  */
 public final class HWDocument {
+	// number of lines from which sections are parsed in parallel
+	private static final int PARALLEL_THRESHOLD = 4096;
+
 	private final String title, author;
 	private final List<Section> sections = new ArrayList<>();
 
@@ -38,83 +47,133 @@ public final class HWDocument {
 	 * @param file	a text file
 	 */
 	public static HWDocument parse(Path file) throws IOException {
-		final Builder doc = new Builder();
+		final Splitter doc = new Splitter(file, false);
 
+		try (final ReadableByteChannel in = Files.newByteChannel(file)) {
+			return parse(in, doc);
+		}
+	}
 
-		final List<String> lines =
-				Files.lines(file).collect(Collectors.toList());
+	/**
+	 * Parse the content read from the specified channel to a HWDocument. The channel is
+	 * read until the end of the stream, but is not closed.
+	 * @param in	a channel of UTF-8 text
+	 */
+	public static HWDocument parse(ReadableByteChannel in) throws IOException {
+		return parse(in, new Splitter(null, false));
+	}
 
-		final Iterator<String> linesIt = lines.iterator();
+	private static HWDocument parse(ReadableByteChannel in, Splitter doc) throws IOException {
+		final HWParser parser = new HWParser(doc);
 
-		// look for title and author
-		boolean hasTitle = false, hasAuthor = false;
+		parser.feedAll(in);
+		parser.finish();
 
-		while (linesIt.hasNext()) {
-			final String line = linesIt.next();
+		return doc.build();
+	}
 
-			if (line.isEmpty()) break;	// empty line, stop
+	/**
+	 * Parse a file to a HWDocument by mapping it into memory. Lines of ASCII text are kept
+	 * as slices of the mapped file instead of strings, this greatly reduces allocation for
+	 * large files. The mapping is retained as long as the returned document is reachable.
+	 * @param file	a text file
+	 */
+	public static HWDocument parseMapped(Path file) throws IOException {
+		final Splitter doc = new Splitter(file, true);
 
-			if (!hasTitle) {
-				doc.setTitle(line);
-				hasTitle = true;
-			}
-			else if (!hasAuthor) {
-				doc.setAuthor(line);
-				hasAuthor = true;
-			}
+		final HWParser parser = new HWParser(doc);
+
+		try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			parser.feedMapped(channel);
 		}
+		parser.finish();
 
+		return doc.build();
+	}
 
-		// split into sections
-		final List<List<String>> sections = new ArrayList<>();
-		sections.add(new ArrayList<>());
-		int lastSection = 0;
 
-		boolean isLastLineEmpty = false;
+	/**
+	 * Collects the header and the lines of each section of a document. The sections are
+	 * parsed once the whole document is read, in parallel if the document is large
+	 * enough. The order of the sections is kept.
+	 */
+	private static final class Splitter implements HWParser.Listener {
+		private final Builder doc = new Builder();
+		private final List<List<CharSequence>> sections = new ArrayList<>();
+		private long lineCount = 0;
+
+		// spans from the creation of the Splitter to the end of build
+		private final ParseEvent event = new ParseEvent();
+		private final Path input;
+		private final boolean mapped;
+
+		private Splitter(Path input, boolean mapped) {
+			this.input = input;
+			this.mapped = mapped;
+			event.begin();
+		}
+
+		@Override
+		public void header(String title, String author) { doc.header(title, author); }
+
+		@Override
+		public void sectionLines(List<CharSequence> lines) {
+			sections.add(lines);
+			lineCount += lines.size();
+		}
+
+		@Override
+		public void section(Section section) { doc.addSection(section); }
 
-		while (linesIt.hasNext()) {
-			final String line = linesIt.next();
+		private HWDocument build() {
+			// small documents are not worth the overhead
+			final boolean parallel =
+					lineCount >= PARALLEL_THRESHOLD && sections.size() > 1;
 
-			// 2 empty lines, new section
-			if (isLastLineEmpty && line.isEmpty()) {
-				removeMatchingTrailing(sections.get(lastSection), String::isEmpty);
-				sections.add(new ArrayList<>());
-				lastSection++;
+			final IntStream indices = IntStream.range(0, sections.size());
+			(parallel ? indices.parallel() : indices)
+					.mapToObj(this::parseSection)
+					.forEachOrdered(doc::addSection);
+
+			final HWDocument built = doc.build();
+
+			event.end();
+			if (event.shouldCommit()) {
+				event.input = (input == null) ? null : input.toString();
+				event.mapped = mapped;
+				event.lineCount = lineCount;
+				event.sectionCount = sections.size();
+				event.commit();
 			}
-			else
-				sections.get(lastSection).add(line);
 
-			isLastLineEmpty = line.isEmpty();
+			return built;
 		}
 
+		private Section parseSection(int index) {
+			final long allocation = Allocation.begin();
+			final SectionParseEvent event = new SectionParseEvent();
+			event.begin();
 
-		// handle each section
-		sections.stream()
-				.map(Section::parse)
-				.forEachOrdered(doc::addSection);
-
-		return doc.build();
-	}
+			final List<CharSequence> lines = sections.get(index);
+			final Section section = Section.parse(lines);
 
+			event.end();
+			if (event.shouldCommit()) {
+				event.sectionIndex = index;
+				event.lineCount = lines.size();
+				event.commit();
+			}
 
-	/**
-	 * Traverse through the specified list in reverse and removes all elements matching
-	 * the given predicate until the first element failing the condition if found.
-	 * @param list	the list to traverse
-	 * @param condition	the condition to check for
-	 */
-	private static <T> void removeMatchingTrailing(
-			List<T> list,
-			Predicate<? super T> condition) {
-		for (int i = list.size()-1; i >= 0; i--) {
-			if (!condition.test(list.get(i)))
-				break;
-			list.remove(i);
+			Allocation.end(allocation);
+			return section;
 		}
 	}
 
 
-	public static final class Builder {
+	/**
+	 * Collects the parts of a document. May be used as the Listener of a HWParser.
+	 */
+	public static final class Builder implements HWParser.Listener {
 		private String title, author;
 		private List<Section> sections = new ArrayList<>();
 
@@ -127,6 +186,15 @@ public final class HWDocument {
 		public List<Section> getSections() { return sections; }
 		public void addSection(Section section) { sections.add(section); }
 
+		@Override
+		public void header(String title, String author) {
+			setTitle(title);
+			setAuthor(author);
+		}
+
+		@Override
+		public void section(Section section) { addSection(section); }
+
 		public HWDocument build() { return new HWDocument(title, author, sections); }
 	}
 }
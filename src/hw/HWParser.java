@@ -0,0 +1,303 @@
+package hw;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An incremental parser for HW documents. Input is pushed into the parser in chunks of
+ * bytes or characters as it becomes available, for example from a pipe or a socket. The
+ * parser is a state machine over the lines of the document, the title, author and each
+ * section are handed to the Listener as soon as they are complete, without waiting for
+ * the end of the input.
+ *
+ * <p>
+ * Lines are terminated by '\n', '\r' or "\r\n", the same as
+ * {@link java.io.BufferedReader#readLine()}. Bytes are decoded as UTF-8, chunk boundaries
+ * may fall anywhere, including in the middle of a line or a multi-byte character.
+ *
+ * <p>
+ * The first lines of the document up to the first empty line are the header, the first
+ * of them is the title and the second is the author. The rest of the document is split
+ * into sections by two consecutive empty lines.
+ */
+public final class HWParser {
+
+	/**
+	 * Receives the parts of a document from a HWParser, in document order.
+	 */
+	public interface Listener {
+		/**
+		 * Called once when the header of the document is complete.
+		 * @param title the title, null if the document has none
+		 * @param author    the author, null if the document has none
+		 */
+		default void header(String title, String author) {}
+
+		/**
+		 * Called with the lines of each section as soon as the section is complete. By
+		 * default the lines are parsed and passed on to {@link #section(Section)}.
+		 */
+		default void sectionLines(List<CharSequence> lines) { section(Section.parse(lines)); }
+
+		/**
+		 * Called with each section as soon as it is complete.
+		 */
+		void section(Section section);
+	}
+
+
+	private enum State { HEADER, BODY, FINISHED }
+
+	private static final int DECODE_BUFFER_SIZE = 8192;
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+	private final Listener listener;
+	private State state = State.HEADER;
+
+	// header
+	private String title, author;
+
+	// body
+	private List<CharSequence> section = new ArrayList<>();
+	private boolean isLastLineEmpty = false;
+
+	// line assembly
+	private final StringBuilder line = new StringBuilder();
+	private boolean skipLF = false;    // last character was '\r'
+
+	// byte decoding, the decoder reports malformed input
+	private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+	private final CharBuffer decoded = CharBuffer.allocate(DECODE_BUFFER_SIZE);
+	// incomplete character at the end of the last byte chunk
+	private final ByteBuffer pending = ByteBuffer.allocate(8);
+
+
+	/**
+	 * Creates a new HWParser delivering to the specified Listener.
+	 */
+	public HWParser(Listener listener) {
+		this.listener = listener;
+	}
+
+
+	/**
+	 * Pushes a chunk of UTF-8 encoded input. All remaining bytes of the buffer are
+	 * consumed.
+	 * @throws CharacterCodingException if the input is not valid UTF-8
+	 */
+	public void feed(ByteBuffer bytes) throws CharacterCodingException {
+		checkNotFinished();
+
+		// complete the character split by the previous chunk
+		if (pending.position() > 0) {
+			final int pendingLength = pending.position();
+			final int start = bytes.position();
+			final int borrowed = Math.min(bytes.remaining(), pending.remaining());
+
+			pending.put(bytes.duplicate().limit(start + borrowed)).flip();
+			decode(pending, false);
+
+			// give back the bytes not consumed
+			final int consumed = pending.position() - pendingLength;
+			if (consumed < 0) {     // still incomplete, everything is borrowed
+				pending.compact();
+				bytes.position(start + borrowed);
+				return;
+			}
+			pending.clear();
+			bytes.position(start + consumed);
+		}
+
+		decode(bytes, false);
+
+		// keep incomplete character for the next chunk
+		pending.put(bytes);
+	}
+
+	/**
+	 * Pushes all UTF-8 encoded input read from the channel until the end of the stream.
+	 * The channel is not closed, and the parser is not finished.
+	 * @throws CharacterCodingException if the input is not valid UTF-8
+	 */
+	public void feedAll(ReadableByteChannel in) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		while (in.read(buffer) != -1) {
+			buffer.flip();
+			feed(buffer);
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * Pushes all lines of the file by mapping it into memory. Lines of ASCII text are
+	 * passed to the Listener as slices of the mapped file instead of strings. Must not be
+	 * preceded by other input. The parser is not finished.
+	 * @throws CharacterCodingException if the input is not valid UTF-8
+	 */
+	public void feedMapped(FileChannel file) throws IOException {
+		if (line.length() > 0 || pending.position() > 0)
+			throw new IllegalStateException("Partial line pending");
+
+		MappedInput.scan(file, this);
+	}
+
+	/**
+	 * Pushes a chunk of input characters.
+	 */
+	public void feed(CharSequence chars) {
+		checkNotFinished();
+
+		final int length = chars.length();
+		int start = 0;
+
+		if (skipLF && length > 0) {
+			skipLF = false;
+			if (chars.charAt(0) == '\n') start = 1;
+		}
+
+		for (int i = start; i < length; i++) {
+			final char c = chars.charAt(i);
+			if (c != '\n' && c != '\r') continue;
+
+			line.append(chars, start, i);
+			endLine();
+
+			// "\r\n" is a single line break
+			if (c == '\r') {
+				if (i+1 == length)
+					skipLF = true;
+				else if (chars.charAt(i+1) == '\n')
+					i++;
+			}
+
+			start = i+1;
+		}
+
+		line.append(chars, start, length);
+	}
+
+	/**
+	 * Signals the end of the input. The last section is delivered to the Listener.
+	 * @throws CharacterCodingException if the input ended with an incomplete character
+	 */
+	public void finish() throws CharacterCodingException {
+		checkNotFinished();
+
+		pending.flip();
+		decode(pending, true);
+		pending.clear();
+
+		if (decoder.flush(decoded).isOverflow())
+			throw new IllegalStateException();
+		drainDecoded();
+
+		// last line may not be terminated
+		if (line.length() > 0)
+			endLine();
+
+		if (state == State.HEADER)
+			endHeader();
+
+		// the last section is delivered as is, including trailing empty lines
+		listener.sectionLines(section);
+		section = null;
+		state = State.FINISHED;
+	}
+
+
+	/**
+	 * Pushes a single complete line, without line terminator. Any partial line pushed
+	 * through feed must be terminated before calling this method. The line is handed to
+	 * the Listener as is, it may be a slice of a larger buffer.
+	 */
+	public void acceptLine(CharSequence line) {
+		checkNotFinished();
+
+		switch (state) {
+			case HEADER:
+				// look for title and author, empty line ends the header
+				if (line.length() == 0)
+					endHeader();
+				else if (title == null)
+					title = line.toString();
+				else if (author == null)
+					author = line.toString();
+				break;
+
+			case BODY:
+				// 2 empty lines, new section
+				if (isLastLineEmpty && line.length() == 0) {
+					removeTrailingEmpty(section);
+					listener.sectionLines(section);
+					section = new ArrayList<>();
+				}
+				else
+					section.add(line);
+
+				isLastLineEmpty = line.length() == 0;
+				break;
+		}
+	}
+
+
+	private void endHeader() {
+		state = State.BODY;
+		listener.header(title, author);
+	}
+
+	private void endLine() {
+		final String completed = line.toString();
+		line.setLength(0);
+		acceptLine(completed);
+	}
+
+	private void checkNotFinished() {
+		if (state == State.FINISHED)
+			throw new IllegalStateException("Parser already finished");
+	}
+
+	/**
+	 * Decodes as much of the specified bytes as possible and feeds the decoded
+	 * characters.
+	 */
+	private void decode(ByteBuffer bytes, boolean endOfInput)
+			throws CharacterCodingException {
+		while (true) {
+			final CoderResult result = decoder.decode(bytes, decoded, endOfInput);
+			if (result.isError())
+				result.throwException();
+
+			drainDecoded();
+
+			if (result.isUnderflow())
+				return;
+		}
+	}
+
+	private void drainDecoded() {
+		decoded.flip();
+		feed(decoded);
+		decoded.clear();
+	}
+
+
+	/**
+	 * Removes all empty lines at the end of the specified list.
+	 */
+	private static void removeTrailingEmpty(List<CharSequence> lines) {
+		for (int i = lines.size()-1; i >= 0; i--) {
+			if (lines.get(i).length() != 0)
+				break;
+			lines.remove(i);
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package hw;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Scans lines of a memory mapped file. Line boundaries are found on the raw UTF-8 bytes,
+ * lines consisting only of ASCII characters are passed on as slices of the mapped region
+ * without copying, other lines are decoded.
+ */
+final class MappedInput {
+	// files larger than this are mapped in several regions
+	private static final int MAX_REGION_SIZE = 1 << 30;
+
+	private MappedInput() {}
+
+	/**
+	 * Feeds every line of the specified file to the parser.
+	 * @param channel   a channel of UTF-8 text
+	 */
+	static void scan(FileChannel channel, HWParser parser) throws IOException {
+		final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+		final long size = channel.size();
+
+		long regionStart = 0;
+		boolean skipLF = false;    // last region ended with '\r'
+
+		while (regionStart < size) {
+			final boolean isLastRegion = size - regionStart <= MAX_REGION_SIZE;
+			final int regionSize =
+					(int) Math.min(size - regionStart, MAX_REGION_SIZE);
+
+			final MappedByteBuffer region =
+					channel.map(FileChannel.MapMode.READ_ONLY, regionStart, regionSize);
+
+			int lineStart = 0;
+			if (skipLF && region.get(0) == '\n') lineStart = 1;
+			skipLF = false;
+
+			boolean isAscii = true;
+			for (int i = lineStart; i < regionSize; i++) {
+				final byte b = region.get(i);
+
+				if (b == '\n' || b == '\r') {
+					parser.acceptLine(line(region, lineStart, i, isAscii, decoder));
+
+					// "\r\n" is a single line break
+					if (b == '\r') {
+						if (i+1 < regionSize) {
+							if (region.get(i+1) == '\n') i++;
+						}
+						else skipLF = true;
+					}
+
+					lineStart = i+1;
+					isAscii = true;
+				}
+				else if (b < 0)
+					isAscii = false;
+			}
+
+			// line not terminated in this region
+			if (lineStart < regionSize) {
+				if (isLastRegion)
+					parser.acceptLine(line(region, lineStart, regionSize, isAscii, decoder));
+				else if (lineStart == 0)
+					throw new IOException("Line too long");
+			}
+
+			regionStart += isLastRegion ? regionSize : lineStart;
+		}
+	}
+
+	private static CharSequence line(
+			final ByteBuffer region,
+			final int start,
+			final int end,
+			final boolean isAscii,
+			final CharsetDecoder decoder) throws IOException {
+		if (isAscii)
+			return new AsciiSlice(region, start, end - start);
+		else
+			return decoder.decode(region.duplicate().position(start).limit(end)).toString();
+	}
+}
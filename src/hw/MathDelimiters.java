@@ -0,0 +1,42 @@
+package hw;
+
+/**
+ * The delimiters of math typeset by the engine in the text of a document: '`' of
+ * AsciiMath, "$$", "\(" and "\[" of TeX, and the &lt;math&gt; element of MathML. Text
+ * without any of them has no math for any configuration of the engine using these.
+ */
+public final class MathDelimiters {
+	private MathDelimiters() {}
+
+	/**
+	 * Tests if the specified text contains the start of a math delimiter.
+	 */
+	public static boolean containsMath(CharSequence text) {
+		final int length = text.length();
+		for (int i = 0; i < length; i++) {
+			switch (text.charAt(i)) {
+				case '`':
+					return true;
+				case '$':
+					if (i+1 < length && text.charAt(i+1) == '$') return true;
+					break;
+				case '\\':
+					if (i+1 < length && (text.charAt(i+1) == '(' || text.charAt(i+1) == '['))
+						return true;
+					break;
+				case '<':
+					if (startsWith(text, i+1, "math")) return true;
+					break;
+			}
+		}
+		return false;
+	}
+
+	private static boolean startsWith(CharSequence text, int start, String prefix) {
+		if (text.length() - start < prefix.length()) return false;
+		for (int i = 0; i < prefix.length(); i++) {
+			if (Character.toLowerCase(text.charAt(start + i)) != prefix.charAt(i)) return false;
+		}
+		return true;
+	}
+}
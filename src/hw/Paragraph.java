@@ -1,20 +1,19 @@
 package hw;
 
 import html.Attribute;
-import html.Element;
+import html.HtmlSink;
+
+import java.io.IOException;
 
 /**
  * A Paragraph is similar to Group, except that the HTML representation is marked with
  * a special class called "paragraph".
  */
 public final class Paragraph extends Group {
-	@Override
-	public Element toHtmlContent() {
-		final Element element =
-				new Element("div", new Attribute("class", "paragraph"));
+	private static final Attribute CLASS = Attribute.shared("class", "paragraph");
 
-		contents.forEach(content -> element.appendContent(content.toHtmlContent()));
-
-		return element;
+	@Override
+	protected void renderAttributes(HtmlSink sink) throws IOException {
+		sink.attribute(CLASS);
 	}
 }
@@ -1,18 +1,21 @@
 package hw;
 
-import html.Text;
+import html.HtmlSink;
+import html.Lines;
+
+import java.io.IOException;
 
 /**
  * Tre-formatted text that is treated as is.
  */
 public class PreText extends TextContent {
 
-	public PreText(String text) {
+	public PreText(CharSequence text) {
 		super(text);
 	}
 
 	@Override
-	public html.Content toHtmlContent() {
-		return new Text(toString());
+	public void render(HtmlSink sink) throws IOException {
+		sink.lines(getLines(), Lines.NEWLINE);
 	}
 }
@@ -1,5 +1,7 @@
 package hw;
 
+import trace.TableParseEvent;
+
 import java.util.Iterator;
 
 /**
@@ -7,8 +9,12 @@ import java.util.Iterator;
  */
 public final class Section extends Group {
 
-	public static Section parse(Iterable<? extends String> lines) {
-		final Iterator<? extends String> linesIt = lines.iterator();
+	/**
+	 * Parses the lines of a section. The lines are kept by the resulting Section, or
+	 * sliced with subSequence, never copied.
+	 */
+	public static Section parse(Iterable<? extends CharSequence> lines) {
+		final Iterator<? extends CharSequence> linesIt = lines.iterator();
 		final Section section = new Section();
 
 		if (!linesIt.hasNext())  // empty section
@@ -24,16 +30,24 @@ public final class Section extends Group {
 		 */
 		Paragraph paragraph = null;
 		Content<?> content = null;
+		// spans the rows of the current table
+		TableParseEvent tableEvent = null;
 
 		// for each remaining line
 		while (linesIt.hasNext()) {
-			final String line = linesIt.next();
+			final CharSequence line = linesIt.next();
+
+			// table complete
+			if (tableEvent != null && !startsWith(line, '|')) {
+				commit(tableEvent, (Table) content);
+				tableEvent = null;
+			}
 
 			// init on first line
 			if (paragraph == null)
 				paragraph = new Paragraph();
 			// empty line, new paragraph
-			else if (line.isEmpty()) {
+			else if (line.length() == 0) {
 				if (content != null && !content.isEmpty()) {
 					paragraph.append(content);
 					content = null;
@@ -47,31 +61,36 @@ public final class Section extends Group {
 
 
 			// pre text
-			if (line.startsWith("//")) {
+			if (startsWith(line, '/', '/')) {
+				final CharSequence text = line.subSequence(2, line.length());
+
 				if (content == null) // handle null
-					content = new PreText(line.substring(2));
+					content = new PreText(text);
 				else {
 					// if type of content is or is subtype of PreText
 					if (content instanceof PreText)
 						// append to that
-						((PreText) content).append(line.substring(2));
+						((PreText) content).append(text);
 					else {
 						// put content in paragraph and prepare new content
 						paragraph.append(content);
-						content = new PreText(line.substring(2));
+						content = new PreText(text);
 					}
 				}
 			}
 
 			// table
-			else if (line.startsWith("|")) {
-				if (content == null) // handle null
+			else if (startsWith(line, '|')) {
+				if (content == null) { // handle null
+					tableEvent = beginTable();
 					content = new Table(line);
+				}
 				else {
 					if (content instanceof Table)
 						((Table) content).append(line);
 					else {
 						paragraph.append(content);
+						tableEvent = beginTable();
 						content = new Table(line);
 					}
 				}
@@ -95,6 +114,9 @@ public final class Section extends Group {
 			}
 		}
 
+		if (tableEvent != null)
+			commit(tableEvent, (Table) content);
+
 		// if paragraph is null, no line after subtitle
 		if (paragraph != null) {
 			if (content != null && !content.isEmpty())
@@ -105,4 +127,32 @@ public final class Section extends Group {
 
 		return section;
 	}
+
+	private static TableParseEvent beginTable() {
+		final TableParseEvent event = new TableParseEvent();
+		event.begin();
+		return event;
+	}
+
+	private static void commit(TableParseEvent event, Table table) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.rowCount = table.getRowCount();
+			event.cellCount = table.getCellCount();
+			event.commit();
+		}
+	}
+
+	/**
+	 * Tests if the specified line starts with the specified characters.
+	 */
+	private static boolean startsWith(CharSequence line, char... prefix) {
+		if (line.length() < prefix.length) return false;
+
+		for (int i = 0; i < prefix.length; i++) {
+			if (line.charAt(i) != prefix[i])
+				return false;
+		}
+		return true;
+	}
 }
@@ -1,16 +1,20 @@
 package hw;
 
-import html.Element;
+import html.HtmlSink;
+import html.Lines;
+
+import java.io.IOException;
 
 public final class SubTitle extends TextContent {
-	public SubTitle(String title) {
+	public SubTitle(CharSequence title) {
 		super(title);
 	}
 
 	@Override
-	public html.Content toHtmlContent() {
-		final Element element = new Element("h4");
-		element.appendContent(toString());
-		return element;
+	public void render(HtmlSink sink) throws IOException {
+		sink.startElement("h4");
+		// the same as toString, without joining the lines
+		sink.lines(getLines(), Lines.NEWLINE);
+		sink.endElement();
 	}
 }
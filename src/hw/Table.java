@@ -1,14 +1,10 @@
 package hw;
 
 import html.Attribute;
-import html.Element;
+import html.HtmlSink;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.io.IOException;
+import java.util.*;
 
 /**
  * Represents a table in the document.
@@ -44,25 +40,41 @@ import java.util.stream.Stream;
  * than the corresponding header row or subsequent data rows, all of the formatting will
  * be applied, and the extra cells in the header row or data rows will use the default
  * left alignment.
+ *
+ * <p>
+ * A table may be rendered compact, see {@link #setChunkRows(int)}. The leading header
+ * rows are then a &lt;thead&gt; and the other rows are split into &lt;tbody&gt; chunks of
+ * a fixed number of rows. The alignment of the columns is stated once per row group by
+ * its classes, styled by the rules of {@link #compactCSS(int)}, instead of on each cell.
  */
-public final class Table implements Content<String> {
+public final class Table implements Content<CharSequence> {
+	// columns aligned by the classes of the row groups of a compact table, the cells of
+	// the columns after them have their alignment attribute
+	private static final int CLASS_COLUMNS = 16;
+	private static final Attribute COMPACT = Attribute.shared("class", "compact");
 
 	/** Alignment of the cell content. */
 	private enum Align {
 
-		LEFT(new Attribute("text-align", "left")),
-		CENTERED(new Attribute("text-align", "center")),
-		RIGHT(new Attribute("text-align", "right"));
+		LEFT(Attribute.shared("text-align", "left")),
+		CENTERED(Attribute.shared("text-align", "center")),
+		RIGHT(Attribute.shared("text-align", "right"));
 
 		private final Attribute attribute;
 
 		Align(final Attribute attribute) { this.attribute = attribute; }
 		private Attribute toAttribute() { return attribute; }
 
-		private static Align parse(final String s) {
-			if (s.startsWith(":") && s.endsWith(":"))
+		/** @return  the class aligning the specified column of a row group */
+		private String toClass(final int column) {
+			return "a" + attribute.getValue().charAt(0) + (column + 1);
+		}
+
+		private static Align parse(final boolean startsWithColon,
+		                           final boolean endsWithColon) {
+			if (startsWithColon && endsWithColon)
 				return Align.CENTERED;
-			else if (s.endsWith(":"))
+			else if (endsWithColon)
 				return Align.RIGHT;
 			else
 				return Align.LEFT;
@@ -70,31 +82,58 @@ public final class Table implements Content<String> {
 	}
 
 
-	private static class Cell {
-		private final String content;
-		private boolean isHeader;
-		private Align align;
-
-		private Cell(final String content,
-		             final boolean isHeader,
-		             final Align align) {
-			this.content = content;
-			this.isHeader = isHeader;
-			this.align = align;
+	/**
+	 * The alignment of a single column, stored as runs of rows. Each run starts at a row
+	 * and lasts until the start of the next run.
+	 */
+	private static final class AlignRuns {
+		private int[] firstRows = new int[2];
+		private Align[] aligns = new Align[2];
+		private int size = 0;
+
+		/**
+		 * Sets the alignment of the specified row and all rows after it.
+		 */
+		private void set(final int firstRow, final Align align) {
+			// later runs are replaced
+			while (size > 0 && firstRows[size-1] >= firstRow) size--;
+
+			if (size == firstRows.length) {
+				firstRows = Arrays.copyOf(firstRows, size * 2);
+				aligns = Arrays.copyOf(aligns, size * 2);
+			}
+			firstRows[size] = firstRow;
+			aligns[size] = align;
+			size++;
 		}
-
-		private Cell(final String content) { this.content = content; }
 	}
 
 
-	private final List<List<Cell>> rows = new ArrayList<>();
-	private List<Align> lastStyles = Collections.emptyList();
+	// distinct cell values, cells refer to them by index
+	private final List<CharSequence> values = new ArrayList<>();
+	private final Map<CharSequence, Integer> valueIndices = new HashMap<>();
+
+	// cells stored by column, column c of row r is columns[c][r]
+	private int[][] columns = new int[0][];
+	private int[] rowLengths = new int[8];
+	private int rowCount = 0;
+
+	private final BitSet headerRows = new BitSet();
+	// alignment of each column that has been formatted by a separation row
+	private final List<AlignRuns> columnAligns = new ArrayList<>();
+
+	// bounds of the cells of the row being appended
+	private int[] cellStarts = new int[8], cellEnds = new int[8];
+
+	// rows of each <tbody> when rendered compact, 0 if not compact
+	private int chunkRows = 0;
+
 
 	/**
 	 * Constructs a table with the specified rows.
 	 * @param rows  rows in markdown-like style
 	 */
-	public Table(final String... rows) {
+	public Table(final CharSequence... rows) {
 		append(rows);
 	}
 
@@ -102,98 +141,300 @@ public final class Table implements Content<String> {
 	 * Constructs a table with the specified rows.
 	 * @param rows  rows in markdown-like style
 	 */
-	public Table(final Collection<String> rows) {
+	public Table(final Collection<? extends CharSequence> rows) {
 		rows.forEach(this::append);
 	}
 
 
 	/** Appends a single row to this table. */
 	@Override
-	public void append(final String row) {
-		final var cellStrings = new ArrayList<>(List.of(row.split("\\|")));
-
-		// remove leading empty strings
-		for (final var it = cellStrings.listIterator(0); it.hasNext(); ) {
-			if (it.next().isEmpty())
-				it.remove();
-			else
-				break;
-		}
-
-		// strip spaces on all cell strings
-		cellStrings.replaceAll(String::strip);
+	public void append(final CharSequence row) {
+		final int cellCount = scanCells(row);
 
 		// check for header, ensure all cells have 3 asterisks
 		boolean isHeader = true;
-		for (final var cell : cellStrings) {
-			if (!cell.contains("***")){
-				isHeader = false;
-				break;
+		for (int i = 0; i < cellCount && isHeader; i++)
+			isHeader = containsAsterisks(row, cellStarts[i], cellEnds[i]);
+
+		if (isHeader)
+			appendSeparator(row, cellCount);
+		else
+			appendRow(row, cellCount);
+	}
+
+	/**
+	 * Finds the cells of a row in a single pass, with leading and trailing whitespace
+	 * removed. Leading and trailing empty cells, those without any character between
+	 * '|', are discarded. The bounds are stored in cellStarts and cellEnds.
+	 * @return  the number of cells
+	 */
+	private int scanCells(final CharSequence row) {
+		int end = row.length();
+		while (end > 0 && row.charAt(end-1) == '|') end--;
+		int start = 0;
+		while (start < end && row.charAt(start) == '|') start++;
+
+		if (start == end) return 0;
+
+		int cellCount = 0;
+		int cellStart = -1, cellEnd = -1;    // bounds of non whitespace of current cell
+
+		for (int i = start; i <= end; i++) {
+			final char c = (i < end) ? row.charAt(i) : '|';
+
+			if (c == '|') {
+				if (cellCount == cellStarts.length) {
+					cellStarts = Arrays.copyOf(cellStarts, cellCount * 2);
+					cellEnds = Arrays.copyOf(cellEnds, cellCount * 2);
+				}
+				// all whitespace, empty at the position of the separator
+				cellStarts[cellCount] = (cellStart < 0) ? i : cellStart;
+				cellEnds[cellCount] = (cellStart < 0) ? i : cellEnd;
+				cellCount++;
+
+				cellStart = -1;
+			}
+			else if (!Character.isWhitespace(c)) {
+				if (cellStart < 0) cellStart = i;
+				cellEnd = i+1;
 			}
 		}
 
+		return cellCount;
+	}
+
+	/** Tests if the specified range contains "***". */
+	private static boolean containsAsterisks(
+			final CharSequence s,
+			final int start,
+			final int end) {
+		int run = 0;
+		for (int i = start; i < end; i++) {
+			run = (s.charAt(i) == '*') ? run+1 : 0;
+			if (run == 3) return true;
+		}
+		return false;
+	}
+
+	private void appendSeparator(final CharSequence row, final int cellCount) {
+		// applies to the previous row, which becomes a header row, and all later rows
+		final int firstRow = (rowCount > 0) ? rowCount-1 : 0;
+		if (rowCount > 0)
+			headerRows.set(rowCount-1);
 
-		if (isHeader) {
-			// parse to enum
-			lastStyles = cellStrings.stream()
-					             .map(Align::parse)
-					             .collect(Collectors.toList());
-			// apply to previous row, mark as header
-			if (!rows.isEmpty()) {
-				final var lastRow = rows.get(rows.size()-1);
-				applyStyle(lastRow, lastStyles);
-				lastRow.forEach(cell -> cell.isHeader = true);
+		while (columnAligns.size() < cellCount)
+			columnAligns.add(new AlignRuns());
+
+		for (int i = 0; i < columnAligns.size(); i++) {
+			if (i < cellCount) {
+				final boolean startsWithColon = row.charAt(cellStarts[i]) == ':';
+				final boolean endsWithColon = row.charAt(cellEnds[i]-1) == ':';
+				columnAligns.get(i).set(firstRow, Align.parse(startsWithColon, endsWithColon));
 			}
+			// the previous row keeps its alignment for the extra cells
+			else
+				columnAligns.get(i).set(rowCount, null);
 		}
-		else {
-			// convert to cells
-			final List<Cell> newRow = cellStrings.stream()
-					                          .map(Cell::new)
-					                          .collect(Collectors.toList());
-			applyStyle(newRow, lastStyles);
-			rows.add(newRow);
+	}
+
+	private void appendRow(final CharSequence row, final int cellCount) {
+		// grow storage
+		if (rowCount == rowLengths.length) {
+			rowLengths = Arrays.copyOf(rowLengths, rowCount * 2);
+			for (int i = 0; i < columns.length; i++)
+				columns[i] = Arrays.copyOf(columns[i], rowLengths.length);
+		}
+		if (cellCount > columns.length) {
+			final int oldWidth = columns.length;
+			columns = Arrays.copyOf(columns, cellCount);
+			for (int i = oldWidth; i < cellCount; i++)
+				columns[i] = new int[rowLengths.length];
+		}
+
+		for (int i = 0; i < cellCount; i++) {
+			final CharSequence value = row.subSequence(cellStarts[i], cellEnds[i]);
+
+			// repeated values are stored once
+			Integer index = valueIndices.get(value);
+			if (index == null) {
+				index = values.size();
+				values.add(value);
+				valueIndices.put(value, index);
+			}
+			columns[i][rowCount] = index;
 		}
+
+		rowLengths[rowCount] = cellCount;
+		rowCount++;
 	}
 
-	private static void applyStyle(final List<Cell> row,
-	                               final List<Align> formatting) {
-		final var rowIt = row.listIterator(0);
-		final var styleIt = formatting.listIterator(0);
 
-		while (rowIt.hasNext() && styleIt.hasNext())
-			rowIt.next().align = styleIt.next();
+	/**
+	 * Renders this table compact, with at most the specified number of rows in each
+	 * &lt;tbody&gt; element, or in the default form if 0.
+	 */
+	public void setChunkRows(final int chunkRows) {
+		if (chunkRows < 0) throw new IllegalArgumentException("Negative rows: " + chunkRows);
+		this.chunkRows = chunkRows;
+	}
+
+	/**
+	 * @return  the css rules of compact tables with the specified number of rows in each
+	 * &lt;tbody&gt;: the alignment classes, such as "ar2" aligning the second column to
+	 * the right, and the chunks skipped by layout until scrolled to
+	 */
+	public static String compactCSS(final int chunkRows) {
+		final StringBuilder css = new StringBuilder();
+		// about the height of a chunk of single line rows until laid out once
+		css.append("table.compact > tbody { content-visibility: auto; ")
+				.append("contain-intrinsic-size: auto ").append(chunkRows * 2).append("em; }\n");
+		for (final Align align : Align.values()) {
+			for (int column = 0; column < CLASS_COLUMNS; column++) {
+				css.append('.').append(align.toClass(column)).append(" > tr > :nth-child(")
+						.append(column + 1).append(") { text-align: ")
+						.append(align.toAttribute().getValue()).append("; }\n");
+			}
+		}
+		return css.toString();
 	}
 
 
 	/** Appends all rows to this table in the specified order. */
-	public void append(final String... rows) {
+	public void append(final CharSequence... rows) {
 		for (final var row : rows) append(row);
 	}
 
 
 	@Override
-	public boolean isEmpty() { return rows.isEmpty(); }
+	public boolean isEmpty() { return rowCount == 0; }
+
+	/** Tests each distinct cell value once. */
+	@Override
+	public boolean hasMath() {
+		for (CharSequence value : values) {
+			if (MathDelimiters.containsMath(value)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return  the number of rows, including header rows but not separation rows
+	 */
+	public int getRowCount() { return rowCount; }
+
+	/**
+	 * @return  the number of cells in all rows
+	 */
+	public int getCellCount() {
+		int cells = 0;
+		for (int row = 0; row < rowCount; row++) cells += rowLengths[row];
+		return cells;
+	}
 
 	@Override
-	public html.Content toHtmlContent() {
-		final Element tableElement = new Element("table");
+	public void render(final HtmlSink sink) throws IOException {
+		if (chunkRows > 0) {
+			renderCompact(sink);
+			return;
+		}
+
+		sink.startElement("table");
+
+		// current run of each formatted column
+		final int[] runs = new int[columnAligns.size()];
 
-		for (final var row : rows) {
-			final var rowElement = new Element("tr");
+		for (int row = 0; row < rowCount; row++) {
+			sink.startElement("tr");
+			final boolean isHeader = headerRows.get(row);
 
-			for (final var cell : row) {
-				final var cellElement = new Element(cell.isHeader ? "th" : "td");
-				cellElement.appendContent(cell.content);
+			for (int column = 0; column < rowLengths[row]; column++) {
+				sink.startElement(isHeader ? "th" : "td");
 
-				if (cell.align != null)
-					cellElement.addAttribute(cell.align.toAttribute());
+				final Align align = alignAt(column, row, runs);
+				if (align != null)
+					sink.attribute(align.toAttribute());
 
-				rowElement.appendContent(cellElement);
+				sink.text(values.get(columns[column][row]));
+				sink.endElement();
 			}
 
-			tableElement.appendContent(rowElement);
+			sink.endElement();
 		}
 
-		return tableElement;
+		sink.endElement();
+	}
+
+	/**
+	 * Renders the rows in groups of the same alignment, see {@link #setChunkRows(int)}.
+	 */
+	private void renderCompact(final HtmlSink sink) throws IOException {
+		sink.startElement("table");
+		sink.attribute(COMPACT);
+
+		// rows where the alignment of any column changes
+		final BitSet changes = new BitSet();
+		for (final AlignRuns aligns : columnAligns) {
+			for (int i = 0; i < aligns.size; i++) changes.set(aligns.firstRows[i]);
+		}
+
+		final int[] runs = new int[columnAligns.size()];
+		final Align[] aligns = new Align[columnAligns.size()];
+
+		int row = 0;
+		while (row < rowCount) {
+			final int start = row;
+			final boolean isHead = start == 0 && headerRows.get(0);
+			sink.startElement(isHead ? "thead" : "tbody");
+
+			// the same for all rows of the group
+			final StringBuilder classes = new StringBuilder();
+			for (int column = 0; column < aligns.length; column++) {
+				aligns[column] = alignAt(column, start, runs);
+				if (column < CLASS_COLUMNS && aligns[column] != null) {
+					if (classes.length() > 0) classes.append(' ');
+					classes.append(aligns[column].toClass(column));
+				}
+			}
+			if (classes.length() > 0)
+				sink.attribute(new Attribute("class", classes.toString()));
+
+			do {
+				sink.startElement("tr");
+				final boolean isHeader = headerRows.get(row);
+
+				for (int column = 0; column < rowLengths[row]; column++) {
+					sink.startElement(isHeader ? "th" : "td");
+					if (column >= CLASS_COLUMNS && column < aligns.length && aligns[column] != null)
+						sink.attribute(aligns[column].toAttribute());
+
+					sink.text(values.get(columns[column][row]));
+					sink.endElement();
+				}
+
+				sink.endElement();
+				row++;
+			} while (row < rowCount && row - start < chunkRows && !changes.get(row) &&
+					         (!isHead || headerRows.get(row)));
+
+			sink.endElement();
+		}
+
+		sink.endElement();
+	}
+
+	/**
+	 * @return  the alignment of the specified cell, null if none. The rows of each
+	 * column are visited in order, runs holds the current run of each formatted column.
+	 */
+	private Align alignAt(final int column, final int row, final int[] runs) {
+		if (column >= runs.length) return null;
+
+		final AlignRuns aligns = columnAligns.get(column);
+		while (runs[column] + 1 < aligns.size && aligns.firstRows[runs[column] + 1] <= row)
+			runs[column]++;
+
+		return (aligns.size > 0 && aligns.firstRows[runs[column]] <= row) ?
+				aligns.aligns[runs[column]] :
+				null;
 	}
 }
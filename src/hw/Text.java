@@ -1,31 +1,26 @@
 package hw;
 
-import html.BR;
-import html.Element;
+import html.HtmlSink;
+import html.Lines;
 
-import java.util.Iterator;
+import java.io.IOException;
 
 /**
  * Regular text in a document.
  */
 public class Text extends TextContent {
-	public Text(String text) {
+	public Text(CharSequence text) {
 		super(text);
 	}
 
 	@Override
-	public html.Content toHtmlContent() {
-		final Element p = new Element("p");
+	public void render(HtmlSink sink) throws IOException {
+		sink.startElement("p");
 
-		final Iterator<String> linesIt = getLines().iterator();
-		if (linesIt.hasNext())
-			p.appendContent(linesIt.next());
+		// lines separated by <br>
+		if (!getLines().isEmpty())
+			sink.lines(getLines(), Lines.BREAK);
 
-		linesIt.forEachRemaining(line -> {
-			p.appendContent(BR.INSTANCE);
-			p.appendContent(line);
-		});
-
-		return p;
+		sink.endElement();
 	}
 }
@@ -7,22 +7,34 @@ import java.util.List;
  * Represents content in a document composed of text. This can be thought as the leaves in
  * a HW document tree.
  *
- * @version 1.0
+ * @version 1.1
  */
-public abstract class TextContent implements Content<String> {
+public abstract class TextContent implements Content<CharSequence> {
 
-	protected List<String> lines = new ArrayList<>();
+	protected List<CharSequence> lines = new ArrayList<>();
 
-	protected TextContent(String content) { append(content); }
+	protected TextContent(CharSequence content) { append(content); }
 
 	@Override
-	public void append(final String content) { lines.add(content); }
+	public void append(final CharSequence content) { lines.add(content); }
 
-	public List<String> getLines() { return lines; }
+	/**
+	 * @return  the lines in this TextContent, these may be slices of the input rather
+	 * than strings
+	 */
+	public List<CharSequence> getLines() { return lines; }
 
 	@Override
 	public boolean isEmpty() { return lines.isEmpty(); }
 
+	@Override
+	public boolean hasMath() {
+		for (CharSequence line : lines) {
+			if (MathDelimiters.containsMath(line)) return true;
+		}
+		return false;
+	}
+
 	/**
 	 * @return  the lines in this TextContent separated with newline characters
 	 */
@@ -0,0 +1,70 @@
+package trace;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bytes allocated by a conversion, the measured thread and the tasks it hands to other
+ * threads, such as sections parsed and rendered in parallel. Each task adds what its
+ * thread allocated while it ran, so the allocation of pool threads is counted even if
+ * they end before it is read. Tasks run by the measured thread itself are counted by the
+ * thread. Nothing is counted until a thread is measured.
+ *
+ * <p>
+ * Usage in a task,
+ * <pre>
+ * final long allocation = Allocation.begin();
+ * ...
+ * Allocation.end(allocation);
+ * </pre>
+ */
+public final class Allocation {
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	// returned by begin when the task is not counted
+	private static final long NOT_COUNTED = -1;
+
+	// the thread whose own allocation is counted, null if none
+	private static volatile Thread measured;
+	private static final LongAdder TASKS = new LongAdder();
+
+	private Allocation() {}
+
+
+	/**
+	 * Starts counting the allocation of the current thread and of the tasks run on
+	 * other threads.
+	 */
+	public static void measure() {
+		measured = Thread.currentThread();
+	}
+
+	/**
+	 * @return  the bytes allocated by the measured thread since it started, which must be
+	 * the current thread, and by the tasks on other threads since it was measured
+	 */
+	public static long allocatedBytes() {
+		return THREADS.getCurrentThreadAllocatedBytes() + TASKS.sum();
+	}
+
+
+	/**
+	 * Starts a task, to be ended with {@link #end(long)} on the same thread.
+	 */
+	public static long begin() {
+		final Thread thread = measured;
+		return (thread == null || thread == Thread.currentThread()) ?
+				NOT_COUNTED :
+				THREADS.getCurrentThreadAllocatedBytes();
+	}
+
+	/**
+	 * Ends a task, adding what the current thread allocated since it began.
+	 * @param start the value returned by {@link #begin()}
+	 */
+	public static void end(long start) {
+		if (start != NOT_COUNTED)
+			TASKS.add(THREADS.getCurrentThreadAllocatedBytes() - start);
+	}
+}
@@ -0,0 +1,22 @@
+package trace;
+
+import jdk.jfr.*;
+
+/**
+ * Conversion of a HW document to a html document.
+ */
+@Name("hwtohtml.Conversion")
+@Label("Conversion")
+@Category("HWtoHTML")
+@Description("Conversion of a HW document to a html document.")
+public final class ConversionEvent extends Event {
+	@Label("Input")
+	public String input;
+
+	@Label("Output")
+	public String output;
+
+	@Label("Bytes Written")
+	@DataAmount
+	public long bytesWritten;
+}
@@ -0,0 +1,25 @@
+package trace;
+
+import jdk.jfr.*;
+
+/**
+ * Parsing of a whole HW document, including reading the input.
+ */
+@Name("hwtohtml.Parse")
+@Label("Parse")
+@Category("HWtoHTML")
+@Description("Parsing of a whole HW document, including reading the input.")
+public final class ParseEvent extends Event {
+	@Label("Input")
+	@Description("Null if read from a channel")
+	public String input;
+
+	@Label("Mapped")
+	public boolean mapped;
+
+	@Label("Line Count")
+	public long lineCount;
+
+	@Label("Section Count")
+	public int sectionCount;
+}
@@ -0,0 +1,18 @@
+package trace;
+
+import jdk.jfr.*;
+
+/**
+ * Parsing of the lines of a single section.
+ */
+@Name("hwtohtml.SectionParse")
+@Label("Section Parse")
+@Category("HWtoHTML")
+@Description("Parsing of the lines of a single section.")
+public final class SectionParseEvent extends Event {
+	@Label("Section Index")
+	public int sectionIndex;
+
+	@Label("Line Count")
+	public int lineCount;
+}
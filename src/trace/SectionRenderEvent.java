@@ -0,0 +1,19 @@
+package trace;
+
+import jdk.jfr.*;
+
+/**
+ * Rendering of a single section to its html form.
+ */
+@Name("hwtohtml.SectionRender")
+@Label("Section Render")
+@Category("HWtoHTML")
+@Description("Rendering of a single section to its html form.")
+public final class SectionRenderEvent extends Event {
+	@Label("Section Index")
+	public int sectionIndex;
+
+	@Label("Cached")
+	@Description("Whether the rendered section cache is used, the section is parsed and rendered only on a miss")
+	public boolean cached;
+}
@@ -0,0 +1,14 @@
+package trace;
+
+import jdk.jfr.*;
+
+/**
+ * Serialization of a html document to its source. When written to a file, the time
+ * includes encoding and writing, see {@link WriteEvent}.
+ */
+@Name("hwtohtml.Serialize")
+@Label("Serialize")
+@Category("HWtoHTML")
+@Description("Serialization of a html document to its source.")
+public final class SerializeEvent extends Event {
+}
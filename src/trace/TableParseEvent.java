@@ -0,0 +1,18 @@
+package trace;
+
+import jdk.jfr.*;
+
+/**
+ * Parsing of the rows of a single table.
+ */
+@Name("hwtohtml.TableParse")
+@Label("Table Parse")
+@Category("HWtoHTML")
+@Description("Parsing of the rows of a single table.")
+public final class TableParseEvent extends Event {
+	@Label("Row Count")
+	public int rowCount;
+
+	@Label("Cell Count")
+	public int cellCount;
+}
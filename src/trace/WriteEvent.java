@@ -0,0 +1,19 @@
+package trace;
+
+import jdk.jfr.*;
+
+/**
+ * Serialization and writing of a html document to a file.
+ */
+@Name("hwtohtml.Write")
+@Label("Write")
+@Category("HWtoHTML")
+@Description("Serialization and writing of a html document to a file.")
+public final class WriteEvent extends Event {
+	@Label("Output")
+	public String output;
+
+	@Label("Bytes Written")
+	@DataAmount
+	public long bytesWritten;
+}